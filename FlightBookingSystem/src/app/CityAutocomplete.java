@@ -0,0 +1,138 @@
+package app;
+
+import crawler.CityCodeMapper;
+import crawler.CityIndex;
+import javafx.animation.PauseTransition;
+import javafx.concurrent.Task;
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.CustomMenuItem;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.util.Duration;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Type-ahead city suggestions for a TextField.
+ * Typing restarts a short debounce; when it fires, the ranked lookup runs on
+ * a background thread and only the newest request may update the popup
+ * (older ones are cancelled, and a late result is dropped by generation).
+ * Picking a suggestion fills in a name that resolves to that exact code.
+ */
+public class CityAutocomplete {
+
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final Duration DEBOUNCE = Duration.millis(120);
+
+    // One shared lookup thread; lookups take microseconds, so requests never pile up
+    private static final ExecutorService LOOKUP_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "city-autocomplete");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final TextField field;
+    private final ContextMenu popup = new ContextMenu();
+    private final PauseTransition debounce = new PauseTransition(DEBOUNCE);
+    private Task<List<CityIndex.Match>> pending;
+    private long generation;
+    private boolean applyingSelection;
+
+    private CityAutocomplete(TextField field) {
+        this.field = field;
+        debounce.setOnFinished(e -> lookup(field.getText()));
+        field.textProperty().addListener((obs, oldText, newText) -> {
+            if (applyingSelection) {
+                return;
+            }
+            generation++;
+            if (newText == null || newText.trim().isEmpty()) {
+                cancelPending();
+                debounce.stop();
+                popup.hide();
+            } else {
+                debounce.playFromStart();
+            }
+        });
+        field.focusedProperty().addListener((obs, wasFocused, focused) -> {
+            if (!focused) {
+                debounce.stop();
+                popup.hide();
+            }
+        });
+    }
+
+    /**
+     * Attach suggestions to the field.
+     */
+    public static CityAutocomplete attach(TextField field) {
+        return new CityAutocomplete(field);
+    }
+
+    private void lookup(String text) {
+        cancelPending();
+        long requested = generation;
+        String query = text.trim();
+
+        Task<List<CityIndex.Match>> task = new Task<>() {
+            @Override
+            protected List<CityIndex.Match> call() {
+                return CityCodeMapper.searchCities(query, MAX_SUGGESTIONS);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            // The text changed while we were looking up: a newer lookup owns the popup
+            if (requested == generation) {
+                show(task.getValue());
+            }
+        });
+        pending = task;
+        LOOKUP_EXECUTOR.execute(task);
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+
+    private void show(List<CityIndex.Match> matches) {
+        if (matches.isEmpty() || !field.isFocused()) {
+            popup.hide();
+            return;
+        }
+        popup.getItems().clear();
+        for (CityIndex.Match match : matches) {
+            Label label = new Label(match.getName() + "  " + match.getCode().toUpperCase()
+                    + (match.isDomestic() ? "" : "  · International"));
+            label.setPrefWidth(field.getWidth() - 20);
+            CustomMenuItem item = new CustomMenuItem(label, true);
+            item.setOnAction(e -> select(match));
+            popup.getItems().add(item);
+        }
+        if (!popup.isShowing()) {
+            popup.show(field, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    private void select(CityIndex.Match match) {
+        // Prefer the readable name, unless it would resolve to another city
+        String name = match.getName();
+        String text = match.getCode().equals(CityCodeMapper.getCityCode(name)) ? name : match.getCode();
+        applyingSelection = true;
+        try {
+            field.setText(text);
+            field.positionCaret(text.length());
+        } finally {
+            applyingSelection = false;
+        }
+        generation++;
+        cancelPending();
+        debounce.stop();
+        popup.hide();
+    }
+}
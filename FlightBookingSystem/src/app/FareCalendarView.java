@@ -0,0 +1,141 @@
+package app;
+
+import crawler.FareCalendar;
+import crawler.FlightCrawler;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.layout.GridPane;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Flexible-date search: one button per day around the requested date,
+ * showing that day's cheapest fare as soon as its search finishes (nearest
+ * days first, several at once). Picking a day closes the calendar; closing
+ * it stops the days that have not started yet.
+ */
+public class FareCalendarView {
+
+    private static final int COLUMNS = 5;
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("EEE MM-dd", Locale.ENGLISH);
+    private static final String DAY_STYLE = "-fx-font-size: 12px; -fx-background-radius: 5;";
+    private static final String CHEAPEST_STYLE = DAY_STYLE
+            + "-fx-background-color: #27ae60; -fx-text-fill: white; -fx-font-weight: bold;";
+
+    private final FlightSearchView.SearchData searchData;
+    private final Dialog<String> dialog = new Dialog<>();
+    private final FareCalendar calendar;
+    private final Map<String, Button> dayButtons = new HashMap<>();
+    // Latest flights per day, kept current by stale-while-revalidate refreshes
+    private final Map<String, ObservableList<FlightCrawler.FlightInfo>> dayResults = new HashMap<>();
+
+    public FareCalendarView(FlightSearchView.SearchData searchData) {
+        this.searchData = searchData;
+        this.calendar = new FareCalendar(LocalDate.parse(searchData.date), searchData.flexibleDays,
+                (date, flights, cheapest) -> Platform.runLater(() -> dayCompleted(date, flights)));
+        buildDialog();
+    }
+
+    private void buildDialog() {
+        dialog.setTitle("Flexible Dates");
+        dialog.setHeaderText("Cheapest fares " + searchData.origin + " → " + searchData.destination
+                + " around " + searchData.date + "\nSearching...");
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+        dialog.setResultConverter(button -> null);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(8);
+        grid.setVgap(8);
+        grid.setPadding(new Insets(10));
+        List<String> dates = calendar.getDates();
+        for (int i = 0; i < dates.size(); i++) {
+            String date = dates.get(i);
+            Button button = new Button(dayLabel(date) + "\n…");
+            button.setPrefSize(110, 50);
+            button.setStyle(DAY_STYLE);
+            button.setDisable(true);
+            button.setOnAction(e -> {
+                dialog.setResult(date);
+                dialog.close();
+            });
+            dayButtons.put(date, button);
+            dayResults.put(date, FXCollections.observableArrayList());
+            grid.add(button, i % COLUMNS, i / COLUMNS);
+        }
+        dialog.getDialogPane().setContent(grid);
+    }
+
+    /**
+     * Start the search and wait for the user to pick a day.
+     *
+     * @return the chosen date, or empty if the calendar was closed
+     */
+    public Optional<String> showAndWait() {
+        Task<FareCalendar> task = new Task<>() {
+            @Override
+            protected FareCalendar call() throws Exception {
+                return FlightCrawler.searchFareCalendar(searchData.origin, searchData.destination, calendar);
+            }
+        };
+        task.setOnSucceeded(event -> updateHeader());
+        task.setOnFailed(event -> {
+            Throwable ex = task.getException();
+            dialog.setHeaderText("Search failed: " + ex.getMessage());
+            ex.printStackTrace();
+        });
+        Thread thread = new Thread(task, "fare-calendar");
+        thread.setDaemon(true);
+        thread.start();
+
+        Optional<String> chosen = dialog.showAndWait();
+        // Nothing left to show the remaining days on
+        calendar.cancel();
+        return chosen;
+    }
+
+    /**
+     * Flights for a day, updated in place if its fares are refreshed.
+     */
+    public ObservableList<FlightCrawler.FlightInfo> getResults(String date) {
+        return dayResults.getOrDefault(date, FXCollections.observableArrayList());
+    }
+
+    private void dayCompleted(String date, List<FlightCrawler.FlightInfo> flights) {
+        dayResults.get(date).setAll(flights);
+        FlightCrawler.FlightInfo cheapest = calendar.getCheapest(date);
+        Button button = dayButtons.get(date);
+        button.setText(dayLabel(date) + "\n" + (cheapest == null ? "No flights" : cheapest.getPrice()));
+        button.setDisable(flights.isEmpty());
+
+        String cheapestDate = calendar.getCheapestDate();
+        dayButtons.forEach((day, b) -> b.setStyle(day.equals(cheapestDate) ? CHEAPEST_STYLE : DAY_STYLE));
+        updateHeader();
+    }
+
+    private void updateHeader() {
+        String route = "Cheapest fares " + searchData.origin + " → " + searchData.destination
+                + " around " + searchData.date;
+        String cheapestDate = calendar.getCheapestDate();
+        String status = calendar.isFinished() ? "Pick a day" : "Searching...";
+        if (cheapestDate != null) {
+            status += " (cheapest: " + cheapestDate + ", " + calendar.getCheapest(cheapestDate).getPrice() + ")";
+        }
+        dialog.setHeaderText(route + "\n" + status);
+    }
+
+    private static String dayLabel(String date) {
+        return LocalDate.parse(date).format(DAY_FORMAT);
+    }
+}
@@ -0,0 +1,398 @@
+package app;
+
+import crawler.FareBatch;
+import crawler.FareTextParser;
+import crawler.FlightCrawler;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableBooleanValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.IntFunction;
+
+/**
+ * Search results as a sortable, filterable table.
+ *
+ * The flights are copied into a FareBatch and the table's items are row
+ * indices into it: cells format primitive columns when they are shown, and
+ * the table only creates cells for the visible rows. Column sorts and the
+ * quick filters run on the batch columns (FareBatch.sort / select). Flights
+ * streaming in from a search are inserted at their sorted position, so the
+ * selection and scroll position stay put; a refresh rebuilds the batch and
+ * reselects the same flight.
+ */
+public class FlightResultsView {
+
+    private static final double ROW_HEIGHT = 28;
+    private static final String[] DEPARTURE_WINDOWS = {
+            "Any time", "Morning 06-12", "Afternoon 12-18", "Evening 18-24", "Night 00-06" };
+    // Minute-of-day range per window, inclusive; -1 also admits unknown times
+    private static final int[][] WINDOW_MINUTES = {
+            { -1, 1439 }, { 360, 719 }, { 720, 1079 }, { 1080, 1439 }, { 0, 359 } };
+
+    private final ObservableList<FlightCrawler.FlightInfo> liveResults;
+    private final ObservableBooleanValue searching;
+
+    private final Dialog<FlightCrawler.FlightInfo> dialog = new Dialog<>();
+    private final TableView<Integer> table = new TableView<>();
+    private final ObservableList<Integer> rows = FXCollections.observableArrayList();
+    private final Map<TableColumn<Integer, Integer>, FareBatch.SortKey> sortKeys = new HashMap<>();
+    private final CheckBox directOnly = new CheckBox("Direct only");
+    private final TextField maxPrice = new TextField();
+    private final ChoiceBox<String> departureWindow = new ChoiceBox<>(
+            FXCollections.observableArrayList(DEPARTURE_WINDOWS));
+    private final Label status = new Label();
+
+    private FareBatch batch = new FareBatch();
+    // FlightInfo per batch row, returned on selection
+    private final List<FlightCrawler.FlightInfo> flights = new ArrayList<>();
+    private boolean refreshed;
+    private boolean endedEmpty;
+    // Set while the rows are being replaced, so a sort request from the table cannot re-enter
+    private boolean applying;
+
+    /**
+     * @param liveResults flights so far; appends are inserted, any other
+     *                    change (a refresh) rebuilds the table
+     * @param searching   true while more flights may be appended
+     */
+    public FlightResultsView(ObservableList<FlightCrawler.FlightInfo> liveResults, ObservableBooleanValue searching) {
+        this.liveResults = liveResults;
+        this.searching = searching;
+        buildDialog();
+        appendFlights(liveResults);
+    }
+
+    private void buildDialog() {
+        dialog.setTitle("Select Flight");
+        dialog.setHeaderText("Choose a flight (click a column to sort, double-click to book)");
+        dialog.setResizable(true);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        dialog.getDialogPane().lookupButton(ButtonType.OK).disableProperty()
+                .bind(table.getSelectionModel().selectedItemProperty().isNull());
+        dialog.setResultConverter(button -> {
+            Integer row = table.getSelectionModel().getSelectedItem();
+            return button == ButtonType.OK && row != null ? flights.get(row) : null;
+        });
+
+        table.getColumns().add(column("Flight", 80, row -> batch.flightNumber(row), null));
+        table.getColumns().add(column("Airline", 130, row -> batch.airline(row), null));
+        table.getColumns().add(column("Route", 170, row -> flights.get(row).getDepartureAirport() + " → "
+                + flights.get(row).getArrivalAirport(), null));
+        table.getColumns().add(column("Depart", 70,
+                row -> FareTextParser.formatMinute(batch.departureMinute(row)), FareBatch.SortKey.DEPARTURE));
+        table.getColumns().add(column("Arrive", 80, this::arrivalText, FareBatch.SortKey.ARRIVAL));
+        table.getColumns().add(column("Duration", 80, this::durationText, FareBatch.SortKey.DURATION));
+        TableColumn<Integer, Integer> priceColumn = column("Price", 90,
+                row -> batch.priceFen(row) < 0 ? "N/A" : "¥" + FareTextParser.formatPriceFen(batch.priceFen(row)),
+                FareBatch.SortKey.PRICE);
+        table.getColumns().add(priceColumn);
+        table.getColumns().add(column("Stops", 70, row -> batch.transferCount(row) == 0 ? "Direct"
+                : batch.transferCount(row) + (batch.transferCount(row) == 1 ? " stop" : " stops"), null));
+
+        // Every row the same height: the virtual flow can place rows without measuring them
+        table.setFixedCellSize(ROW_HEIGHT);
+        table.setItems(rows);
+        table.setPlaceholder(new Label("Searching..."));
+        table.setSortPolicy(t -> {
+            applyFilters();
+            return true;
+        });
+        table.getSortOrder().add(priceColumn);
+        table.setRowFactory(t -> {
+            TableRow<Integer> tableRow = new TableRow<>();
+            tableRow.setOnMouseClicked(e -> {
+                if (e.getClickCount() == 2 && !tableRow.isEmpty()) {
+                    dialog.setResult(flights.get(tableRow.getItem()));
+                    dialog.close();
+                }
+            });
+            return tableRow;
+        });
+        VBox.setVgrow(table, Priority.ALWAYS);
+
+        maxPrice.setPromptText("Max price ¥");
+        maxPrice.setPrefWidth(110);
+        departureWindow.getSelectionModel().selectFirst();
+        directOnly.selectedProperty().addListener((obs, was, now) -> applyFilters());
+        maxPrice.textProperty().addListener((obs, was, now) -> applyFilters());
+        departureWindow.getSelectionModel().selectedIndexProperty().addListener((obs, was, now) -> applyFilters());
+        HBox filters = new HBox(12, directOnly, maxPrice, departureWindow, status);
+        filters.setAlignment(Pos.CENTER_LEFT);
+
+        VBox content = new VBox(10, filters, table);
+        content.setPadding(new Insets(10));
+        content.setPrefSize(820, 520);
+        dialog.getDialogPane().setContent(content);
+    }
+
+    /**
+     * Show the table until a flight is chosen or the dialog is closed. Closes
+     * by itself if the search ends without any flights.
+     */
+    public Optional<FlightCrawler.FlightInfo> showAndWait() {
+        if (!searching.get() && liveResults.isEmpty()) {
+            endedEmpty = true;
+            return Optional.empty();
+        }
+        ListChangeListener<FlightCrawler.FlightInfo> resultsListener = this::resultsChanged;
+        ChangeListener<Boolean> searchingListener = (obs, wasSearching, nowSearching) -> {
+            if (!nowSearching && flights.isEmpty()) {
+                endedEmpty = true;
+                dialog.close();
+            }
+            updateStatus();
+        };
+        liveResults.addListener(resultsListener);
+        searching.addListener(searchingListener);
+        try {
+            return dialog.showAndWait();
+        } finally {
+            liveResults.removeListener(resultsListener);
+            searching.removeListener(searchingListener);
+        }
+    }
+
+    /**
+     * True if the dialog closed because the search found nothing.
+     */
+    public boolean endedEmpty() {
+        return endedEmpty;
+    }
+
+    private void resultsChanged(ListChangeListener.Change<? extends FlightCrawler.FlightInfo> change) {
+        List<FlightCrawler.FlightInfo> appended = new ArrayList<>();
+        boolean onlyAppends = true;
+        while (change.next()) {
+            if (change.wasRemoved() || change.wasPermutated() || change.wasUpdated()
+                    || change.getFrom() != flights.size() + appended.size()) {
+                onlyAppends = false;
+            } else if (change.wasAdded()) {
+                appended.addAll(change.getAddedSubList());
+            }
+        }
+        if (onlyAppends) {
+            appendFlights(appended);
+        } else {
+            reload();
+        }
+    }
+
+    /**
+     * Add flights to the batch and insert the visible ones into the table.
+     */
+    private void appendFlights(List<? extends FlightCrawler.FlightInfo> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        int[] newRows = new int[added.size()];
+        for (int i = 0; i < newRows.length; i++) {
+            newRows[i] = addRow(added.get(i));
+        }
+        int[] visible = select(newRows);
+        if (visible.length > 0) {
+            if (currentSortKey() == null) {
+                List<Integer> boxed = new ArrayList<>(visible.length);
+                for (int row : visible) {
+                    boxed.add(row);
+                }
+                rows.addAll(boxed);
+            } else {
+                insertSorted(visible);
+            }
+        }
+        updateStatus();
+    }
+
+    /**
+     * Insert rows at their sorted positions. The sort is stable and
+     * deterministic, so the rows already shown keep their relative order and
+     * each new row goes exactly where a full sort would have put it. The
+     * merge is done off the table's list and applied as one change, so the
+     * table updates once per batch rather than once per row.
+     */
+    private void insertSorted(int[] newRows) {
+        Integer selected = table.getSelectionModel().getSelectedItem();
+        int[] merged = new int[rows.size() + newRows.length];
+        for (int i = 0; i < rows.size(); i++) {
+            merged[i] = rows.get(i);
+        }
+        System.arraycopy(newRows, 0, merged, rows.size(), newRows.length);
+        merged = sortRows(merged);
+
+        List<Integer> boxed = new ArrayList<>(merged.length);
+        for (int row : merged) {
+            boxed.add(row);
+        }
+        rows.setAll(boxed);
+        if (selected != null) {
+            table.getSelectionModel().select(selected);
+        }
+    }
+
+    /**
+     * Rebuild everything from the live list (after a refresh), keeping the
+     * selected flight selected. Flights are matched by flight number,
+     * departure time and airline: rows whose flight number could not be
+     * read all share "N/A".
+     */
+    private void reload() {
+        Integer selectedRow = table.getSelectionModel().getSelectedItem();
+        String selectedFlight = selectedRow == null ? null : identity(flights.get(selectedRow));
+
+        batch = new FareBatch(liveResults.size());
+        flights.clear();
+        for (FlightCrawler.FlightInfo info : liveResults) {
+            addRow(info);
+        }
+        refreshed = !searching.get();
+        applyFilters();
+
+        if (selectedFlight != null) {
+            for (int i = 0; i < rows.size(); i++) {
+                if (identity(flights.get(rows.get(i))).equals(selectedFlight)) {
+                    table.getSelectionModel().select(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Recompute the visible rows from the filters and sort order.
+     */
+    private void applyFilters() {
+        if (applying) {
+            return;
+        }
+        applying = true;
+        try {
+            replaceRows();
+        } finally {
+            applying = false;
+        }
+        updateStatus();
+    }
+
+    private void replaceRows() {
+        Integer selected = table.getSelectionModel().getSelectedItem();
+        int[] visible = select(batch.allRows());
+        if (currentSortKey() != null) {
+            visible = sortRows(visible);
+        }
+        List<Integer> boxed = new ArrayList<>(visible.length);
+        for (int row : visible) {
+            boxed.add(row);
+        }
+        rows.setAll(boxed);
+        if (selected != null && rows.contains(selected)) {
+            table.getSelectionModel().select(selected);
+        }
+    }
+
+    private int[] select(int[] candidates) {
+        long maxPriceFen = FareTextParser.parsePriceFen(maxPrice.getText());
+        int[] window = WINDOW_MINUTES[Math.max(0, departureWindow.getSelectionModel().getSelectedIndex())];
+        return batch.select(maxPriceFen, window[0], window[1], directOnly.isSelected(), candidates);
+    }
+
+    private int[] sortRows(int[] candidates) {
+        int[] sorted = batch.sort(currentSortKey(), candidates);
+        TableColumn<Integer, ?> column = table.getSortOrder().get(0);
+        if (column.getSortType() == TableColumn.SortType.DESCENDING) {
+            for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+                int swap = sorted[i];
+                sorted[i] = sorted[j];
+                sorted[j] = swap;
+            }
+        }
+        return sorted;
+    }
+
+    private FareBatch.SortKey currentSortKey() {
+        return table.getSortOrder().isEmpty() ? null : sortKeys.get(table.getSortOrder().get(0));
+    }
+
+    private static String identity(FlightCrawler.FlightInfo info) {
+        return info.getFlightNumber() + "|" + info.getDepartureTime() + "|" + info.getAirline();
+    }
+
+    private int addRow(FlightCrawler.FlightInfo info) {
+        flights.add(info);
+        return batch.add(FareTextParser.parsePriceFen(info.getPrice()),
+                FareTextParser.parseMinuteOfDay(info.getDepartureTime()),
+                FareTextParser.parseMinuteOfDay(info.getArrivalTime()), info.getArrivalDayOffset(),
+                info.getTransferCount(), info.getOriginCode(), info.getDestinationCode(), info.getDate(),
+                info.getAirline(), info.getFlightNumber());
+    }
+
+    private void updateStatus() {
+        String text = "Showing " + rows.size() + " of " + flights.size() + " flights";
+        if (searching.get()) {
+            text += ", still searching...";
+        } else if (refreshed) {
+            text += " (prices refreshed)";
+        }
+        status.setText(text);
+        if (!searching.get() && flights.isEmpty()) {
+            table.setPlaceholder(new Label("No flights found"));
+        } else if (!flights.isEmpty()) {
+            table.setPlaceholder(new Label("No flights match the filters"));
+        }
+    }
+
+    private String arrivalText(int row) {
+        String time = FareTextParser.formatMinute(batch.arrivalMinute(row));
+        return batch.arrivalDayOffset(row) > 0 ? time + " +" + batch.arrivalDayOffset(row) : time;
+    }
+
+    private String durationText(int row) {
+        int minutes = batch.durationMinutes(row);
+        return minutes < 0 ? "N/A" : String.format("%dh%02dm", minutes / 60, minutes % 60);
+    }
+
+    /**
+     * Column whose cell value is the row index; the text is only produced when
+     * a cell is (re)used for a row. Sortable if it has a sort key.
+     */
+    private TableColumn<Integer, Integer> column(String title, double width, IntFunction<String> text,
+            FareBatch.SortKey sortKey) {
+        TableColumn<Integer, Integer> column = new TableColumn<>(title);
+        column.setPrefWidth(width);
+        column.setCellValueFactory(features -> new ReadOnlyObjectWrapper<>(features.getValue()));
+        column.setCellFactory(c -> new TableCell<>() {
+            @Override
+            protected void updateItem(Integer row, boolean empty) {
+                super.updateItem(row, empty);
+                setText(empty || row == null ? null : text.apply(row));
+            }
+        });
+        column.setSortable(sortKey != null);
+        if (sortKey != null) {
+            sortKeys.put(column, sortKey);
+        }
+        return column;
+    }
+}
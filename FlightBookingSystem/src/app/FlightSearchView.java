@@ -22,6 +22,8 @@ public class FlightSearchView {
     private TextField originField;
     private TextField destinationField;
     private DatePicker datePicker;
+    private CheckBox flexibleDatesBox;
+    private Spinner<Integer> flexibleDaysSpinner;
     private Button searchButton;
 
     public FlightSearchView(Stage stage) {
@@ -62,6 +64,7 @@ public class FlightSearchView {
         originField = new TextField();
         originField.setPromptText("chengdu, ctu, sha");
         originField.setStyle("-fx-padding: 10; -fx-font-size: 13px;");
+        CityAutocomplete.attach(originField);
 
         // Destination field
         Label destLabel = new Label("Flying To:");
@@ -69,6 +72,7 @@ public class FlightSearchView {
         destinationField = new TextField();
         destinationField.setPromptText("osaka, kix");
         destinationField.setStyle("-fx-padding: 10; -fx-font-size: 13px;");
+        CityAutocomplete.attach(destinationField);
 
         // Date picker
         Label dateLabel = new Label("Departure Date:");
@@ -78,6 +82,15 @@ public class FlightSearchView {
         datePicker.setValue(LocalDate.now().plusDays(7)); // Default to 7 days from now
         datePicker.setStyle("-fx-padding: 10; -fx-font-size: 13px;");
 
+        // Flexible dates: search a window of days around the date and show the cheapest per day
+        flexibleDatesBox = new CheckBox("Flexible dates, ± days:");
+        flexibleDatesBox.setFont(Font.font("Arial", 13));
+        flexibleDaysSpinner = new Spinner<>(1, 7, 3);
+        flexibleDaysSpinner.setPrefWidth(70);
+        flexibleDaysSpinner.disableProperty().bind(flexibleDatesBox.selectedProperty().not());
+        HBox flexibleBox = new HBox(10, flexibleDatesBox, flexibleDaysSpinner);
+        flexibleBox.setAlignment(Pos.CENTER_LEFT);
+
         // Search button (flight type auto-detected from city selection)
         searchButton = new Button("Search Flights");
         searchButton.setMaxWidth(Double.MAX_VALUE);
@@ -114,6 +127,7 @@ public class FlightSearchView {
                 originLabel, originField,
                 destLabel, destinationField,
                 dateLabel, datePicker,
+                flexibleBox,
                 new Separator(),
                 searchButton);
 
@@ -148,12 +162,22 @@ public class FlightSearchView {
             return null;
         }
 
+        // Reject unknown cities here rather than after a wasted crawl
+        String originCode = crawler.CityCodeMapper.getCityCode(origin);
+        String destinationCode = crawler.CityCodeMapper.getCityCode(destination);
+        if (originCode == null || destinationCode == null) {
+            showAlert("Unknown City", "Could not find \"" + (originCode == null ? origin : destination)
+                    + "\". Pick a city from the suggestions.");
+            return null;
+        }
+
         String dateString = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
 
         // Auto-detect flight type based on cities
-        String flightType = crawler.CityCodeMapper.determineFlightType(origin, destination);
+        String flightType = crawler.CityCodeMapper.determineFlightType(originCode, destinationCode);
 
-        return new SearchData(origin, destination, dateString, flightType);
+        int flexibleDays = flexibleDatesBox.isSelected() ? flexibleDaysSpinner.getValue() : 0;
+        return new SearchData(origin, destination, dateString, flightType, flexibleDays);
     }
 
     private void showAlert(String title, String message) {
@@ -176,12 +200,26 @@ public class FlightSearchView {
         public final String destination;
         public final String date;
         public final String flightType;
+        // Days either side of date to search as well; 0 for an exact-date search
+        public final int flexibleDays;
 
         public SearchData(String origin, String destination, String date, String flightType) {
+            this(origin, destination, date, flightType, 0);
+        }
+
+        public SearchData(String origin, String destination, String date, String flightType, int flexibleDays) {
             this.origin = origin;
             this.destination = destination;
             this.date = date;
             this.flightType = flightType;
+            this.flexibleDays = flexibleDays;
+        }
+
+        /**
+         * The same search pinned to one day (e.g. picked from the fare calendar).
+         */
+        public SearchData onDate(String otherDate) {
+            return new SearchData(origin, destination, otherDate, flightType, 0);
         }
     }
 }
@@ -12,6 +12,9 @@ import model.BookingManager;
  * - Step 2: Passenger information and booking (PassengerInfoView)
  */
 public class Main extends Application {
+    // End-to-end budget of an interactive search, from the click to the last flight
+    private static final java.time.Duration SEARCH_BUDGET = java.time.Duration.ofSeconds(25);
+
     private BookingManager bookingManager;
     private Stage primaryStage;
 
@@ -19,6 +22,8 @@ public class Main extends Application {
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
         this.bookingManager = new BookingManager();
+        // Record the price history of every flight the searches find
+        crawler.FlightCrawler.getPriceHistory();
 
         primaryStage.setTitle("✈️ Flight Booking System");
 
@@ -48,43 +53,28 @@ public class Main extends Application {
      * Perform flight search using the crawler in a background thread
      */
     private void performFlightSearch(FlightSearchView.SearchData searchData) {
-        // Show loading state
-        javafx.scene.control.Alert loadingAlert = new javafx.scene.control.Alert(
-                javafx.scene.control.Alert.AlertType.INFORMATION);
-        loadingAlert.setTitle("Searching Flights");
-        loadingAlert.setHeaderText("Please wait...");
-        loadingAlert.setContentText(
-                "Crawling flight data from Ctrip for " + searchData.origin + " to " + searchData.destination + "...");
-        loadingAlert.show();
+        if (searchData.flexibleDays > 0) {
+            showFareCalendar(searchData);
+            return;
+        }
+
+        // Flights stream into the selection dialog as the crawler extracts them,
+        // followed by any stale-while-revalidate refresh
+        StreamingResults stream = new StreamingResults();
+        // Starts now, so time spent before the crawl counts against it too
+        crawler.Deadline deadline = crawler.Deadline.after(SEARCH_BUDGET);
 
         // Run crawler in background task
         javafx.concurrent.Task<java.util.List<crawler.FlightCrawler.FlightInfo>> task = new javafx.concurrent.Task<>() {
             @Override
             protected java.util.List<crawler.FlightCrawler.FlightInfo> call() throws Exception {
-                return crawler.FlightCrawler.searchFlights(searchData.origin, searchData.destination, searchData.date);
+                return crawler.FlightCrawler.streamFlights(searchData.origin, searchData.destination, searchData.date,
+                        stream, deadline);
             }
         };
 
-        task.setOnSucceeded(event -> {
-            loadingAlert.close();
-            java.util.List<crawler.FlightCrawler.FlightInfo> results = task.getValue();
-
-            if (results.isEmpty()) {
-                javafx.scene.control.Alert alert = new javafx.scene.control.Alert(
-                        javafx.scene.control.Alert.AlertType.WARNING);
-                alert.setTitle("No Flights Found");
-                alert.setHeaderText(null);
-                alert.setContentText(
-                        "No flights found for the selected route and date. Please try different parameters.");
-                alert.showAndWait();
-            } else {
-                // Show selection dialog
-                showFlightSelectionDialog(results, searchData);
-            }
-        });
-
         task.setOnFailed(event -> {
-            loadingAlert.close();
+            stream.onComplete(java.util.Collections.emptyList());
             Throwable ex = task.getException();
             javafx.scene.control.Alert alert = new javafx.scene.control.Alert(
                     javafx.scene.control.Alert.AlertType.ERROR);
@@ -95,24 +85,53 @@ public class Main extends Application {
         });
 
         new Thread(task).start();
+
+        boolean noFlights = showFlightSelectionDialog(stream.getFlights(), stream.searchingProperty(), searchData);
+        // Closing the dialog ends the search early if it is still scrolling
+        stream.cancel();
+
+        if (noFlights && task.getState() == javafx.concurrent.Worker.State.SUCCEEDED) {
+            javafx.scene.control.Alert alert = new javafx.scene.control.Alert(
+                    javafx.scene.control.Alert.AlertType.WARNING);
+            alert.setTitle("No Flights Found");
+            alert.setHeaderText(null);
+            alert.setContentText(
+                    "No flights found for the selected route and date. Please try different parameters.");
+            alert.showAndWait();
+        }
+    }
+
+    /**
+     * Flexible-date search: show the fare calendar, then the flights of the
+     * day picked from it
+     */
+    private void showFareCalendar(FlightSearchView.SearchData searchData) {
+        FareCalendarView calendarView = new FareCalendarView(searchData);
+        calendarView.showAndWait().ifPresent(date -> {
+            javafx.collections.ObservableList<crawler.FlightCrawler.FlightInfo> dayResults = calendarView
+                    .getResults(date);
+            showFlightSelectionDialog(dayResults, new javafx.beans.property.SimpleBooleanProperty(false),
+                    searchData.onDate(date));
+        });
     }
 
     /**
-     * Show dialog to select a flight from results
+     * Show the results table to select a flight from.
+     * The table opens while the search is still running and fills in as
+     * flights arrive; a background refresh replaces them in place.
+     *
+     * @return true if the search ended without finding any flights
      */
-    private void showFlightSelectionDialog(java.util.List<crawler.FlightCrawler.FlightInfo> flights,
-            FlightSearchView.SearchData searchData) {
-        javafx.scene.control.ChoiceDialog<crawler.FlightCrawler.FlightInfo> dialog = new javafx.scene.control.ChoiceDialog<>(
-                flights.get(0), flights);
-        dialog.setTitle("Select Flight");
-        dialog.setHeaderText("Found " + flights.size() + " flights");
-        dialog.setContentText("Choose a flight:");
-
-        // Custom list cell to show details nicely
-        dialog.getDialogPane().setPrefWidth(600);
-
-        java.util.Optional<crawler.FlightCrawler.FlightInfo> result = dialog.showAndWait();
+    private boolean showFlightSelectionDialog(
+            javafx.collections.ObservableList<crawler.FlightCrawler.FlightInfo> liveResults,
+            javafx.beans.value.ObservableBooleanValue searching, FlightSearchView.SearchData searchData) {
+        FlightResultsView resultsView = new FlightResultsView(liveResults, searching);
+        java.util.Optional<crawler.FlightCrawler.FlightInfo> result = resultsView.showAndWait();
+        if (resultsView.endedEmpty()) {
+            return true;
+        }
         result.ifPresent(flight -> showPassengerInfoView(searchData, flight));
+        return false;
     }
 
     /**
@@ -153,6 +172,8 @@ public class Main extends Application {
         if (bookingManager != null) {
             bookingManager.shutdown();
         }
+        crawler.FlightCrawler.closeBrowser();
+        crawler.FlightCrawler.closePriceHistory();
     }
 
     public static void main(String[] args) {
@@ -568,10 +568,10 @@ public class PassengerInfoView {
             // Clean price string (remove currency symbol if present)
             double priceVal = 0.0;
             if (selectedFlight != null) {
-                try {
-                    String priceStr = selectedFlight.getPrice().replaceAll("[^0-9.]", "");
-                    priceVal = Double.parseDouble(priceStr);
-                } catch (NumberFormatException e) {
+                long priceFen = FareTextParser.parsePriceFen(selectedFlight.getPrice());
+                if (priceFen >= 0) {
+                    priceVal = priceFen / 100.0;
+                } else {
                     System.err.println("Error parsing price: " + selectedFlight.getPrice());
                 }
             }
@@ -663,20 +663,13 @@ public class PassengerInfoView {
             return "00:00:00";
         }
 
-        // Remove any Chinese day indicators (+1天, +2天, +3天, etc.)
-        // Also remove newlines and extra whitespace
-        String cleanTime = rawTime.replaceAll("\\s*\\+\\d+天", "").trim();
-
-        // If the time doesn't contain seconds, add ":00"
-        if (cleanTime.matches("\\d{1,2}:\\d{2}")) {
-            cleanTime += ":00";
-        }
-        // If the format is still invalid, return default time
-        else if (!cleanTime.matches("\\d{1,2}:\\d{2}:\\d{2}")) {
+        // Accepts H:MM, HH:MM or HH:MM:SS; day indicators and whitespace are ignored
+        int seconds = FareTextParser.parseSecondOfDay(rawTime);
+        if (seconds < 0) {
             System.err.println("Warning: Invalid time format '" + rawTime + "', using default 00:00:00");
             return "00:00:00";
         }
 
-        return cleanTime;
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
     }
 }
@@ -0,0 +1,108 @@
+package app;
+
+import crawler.FlightCrawler;
+import crawler.SearchSink;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Search sink that feeds an observable list on the FX thread.
+ * Chunks from the crawler thread are buffered, and at most one
+ * Platform.runLater is outstanding at a time: however fast chunks arrive, the
+ * UI applies everything buffered so far in one update per pulse.
+ */
+public class StreamingResults implements SearchSink {
+
+    private final ObservableList<FlightCrawler.FlightInfo> flights = FXCollections.observableArrayList();
+    private final ReadOnlyBooleanWrapper searching = new ReadOnlyBooleanWrapper(true);
+
+    // Guarded by this
+    private final List<FlightCrawler.FlightInfo> pending = new ArrayList<>();
+    private boolean replacePending;
+    private boolean completePending;
+    private boolean updateScheduled;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Flights so far, in arrival order. Only changes on the FX thread.
+     */
+    public ObservableList<FlightCrawler.FlightInfo> getFlights() {
+        return flights;
+    }
+
+    /**
+     * True until the search completes (or fails).
+     */
+    public ReadOnlyBooleanProperty searchingProperty() {
+        return searching.getReadOnlyProperty();
+    }
+
+    @Override
+    public synchronized void onFlights(List<FlightCrawler.FlightInfo> batch) {
+        pending.addAll(batch);
+        scheduleUpdate();
+    }
+
+    @Override
+    public synchronized void onRefresh(List<FlightCrawler.FlightInfo> all) {
+        pending.clear();
+        pending.addAll(all);
+        replacePending = true;
+        scheduleUpdate();
+    }
+
+    @Override
+    public synchronized void onComplete(List<FlightCrawler.FlightInfo> all) {
+        completePending = true;
+        scheduleUpdate();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Ask the crawler to stop; flights already delivered stay in the list.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void scheduleUpdate() {
+        if (!updateScheduled) {
+            updateScheduled = true;
+            Platform.runLater(this::applyPending);
+        }
+    }
+
+    private void applyPending() {
+        List<FlightCrawler.FlightInfo> batch;
+        boolean replace;
+        boolean complete;
+        synchronized (this) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            replace = replacePending;
+            complete = completePending;
+            replacePending = false;
+            completePending = false;
+            updateScheduled = false;
+        }
+        if (replace) {
+            flights.setAll(batch);
+        } else if (!batch.isEmpty()) {
+            flights.addAll(batch);
+        }
+        if (complete) {
+            searching.set(false);
+        }
+    }
+}
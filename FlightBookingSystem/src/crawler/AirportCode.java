@@ -0,0 +1,126 @@
+package crawler;
+
+/**
+ * Three-letter IATA city/airport codes packed into an int.
+ * "SHA" -> ((s * 26) + h) * 26 + a with letters 0-25, so every code fits in
+ * 0 .. 26^3-1 (17576 values) and can index arrays or serve as a primitive map
+ * key; -1 (NONE) marks an invalid code. Packing is case insensitive and
+ * allocation free, and unpacking returns a cached String per code.
+ */
+public final class AirportCode {
+
+    public static final int NONE = -1;
+    public static final int SPACE = 26 * 26 * 26;
+
+    private static final String[] UPPER = new String[SPACE];
+    private static final String[] LOWER = new String[SPACE];
+
+    private AirportCode() {
+    }
+
+    /**
+     * Packed code, or NONE unless the text is exactly three ASCII letters.
+     */
+    public static int pack(CharSequence code) {
+        if (code == null || code.length() != 3) {
+            return NONE;
+        }
+        return pack(code.charAt(0), code.charAt(1), code.charAt(2));
+    }
+
+    public static int pack(char first, char second, char third) {
+        int a = letter(first);
+        int b = letter(second);
+        int c = letter(third);
+        if (a < 0 || b < 0 || c < 0) {
+            return NONE;
+        }
+        return (a * 26 + b) * 26 + c;
+    }
+
+    public static boolean isValid(int code) {
+        return code >= 0 && code < SPACE;
+    }
+
+    /**
+     * "SHA" for a packed code, "N/A" for NONE.
+     */
+    public static String toUpperCase(int code) {
+        if (!isValid(code)) {
+            return "N/A";
+        }
+        String text = UPPER[code];
+        if (text == null) {
+            text = unpack(code, 'A');
+            UPPER[code] = text;
+        }
+        return text;
+    }
+
+    /**
+     * "sha" for a packed code (the form used in Ctrip URLs), "N/A" for NONE.
+     */
+    public static String toLowerCase(int code) {
+        if (!isValid(code)) {
+            return "N/A";
+        }
+        String text = LOWER[code];
+        if (text == null) {
+            text = unpack(code, 'a');
+            LOWER[code] = text;
+        }
+        return text;
+    }
+
+    /**
+     * Upper-case form of a code string, shared per code; anything that is not
+     * a 3-letter code is simply upper-cased.
+     */
+    public static String canonical(String code) {
+        int packed = pack(code);
+        if (packed == NONE) {
+            return code == null ? null : code.toUpperCase();
+        }
+        return toUpperCase(packed);
+    }
+
+    /**
+     * Ordered origin/destination pair as one int (at most 26^6, which fits).
+     */
+    public static int routeKey(int origin, int destination) {
+        if (!isValid(origin) || !isValid(destination)) {
+            return NONE;
+        }
+        return origin * SPACE + destination;
+    }
+
+    /**
+     * Route plus departure day as one long; NONE if either code is invalid.
+     */
+    public static long routeDateKey(int origin, int destination, long epochDay) {
+        int route = routeKey(origin, destination);
+        if (route < 0) {
+            return NONE;
+        }
+        return ((long) route << 32) | (epochDay & 0xFFFFFFFFL);
+    }
+
+    private static int letter(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        return -1;
+    }
+
+    private static String unpack(int code, char base) {
+        char[] chars = new char[3];
+        for (int i = 2; i >= 0; i--) {
+            chars[i] = (char) (base + code % 26);
+            code /= 26;
+        }
+        return new String(chars);
+    }
+}
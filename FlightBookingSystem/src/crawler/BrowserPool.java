@@ -0,0 +1,418 @@
+package crawler;
+
+import com.microsoft.playwright.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Bounded pool of thread-confined browser workers.
+ * Playwright objects are not thread-safe, so every worker owns its own
+ * Playwright instance, Chromium process and a few contexts, and only ever
+ * touches them from its own thread. Callers lease a worker, run a task
+ * against one of its pages and return the worker to the pool.
+ *
+ * A task that outlives its timeout cannot be stopped safely from outside
+ * its thread, so its worker is retired (torn down once the task returns)
+ * and a fresh one takes its place in the pool.
+ */
+public class BrowserPool implements AutoCloseable {
+
+    public static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+    private static final long DEFAULT_LEASE_TIMEOUT_MS = 60000;
+    // Longest a task may run when the caller gives no deadline (a batch crawl's waits add up to about 80 s)
+    private static final long DEFAULT_TASK_TIMEOUT_MS = 120000;
+    // Past a caller's deadline, time for a task to return what it has before its worker is recycled
+    private static final long DEADLINE_GRACE_MS = 2000;
+    // Print the traffic of every task, not just the pool's totals on close
+    private static final boolean VERBOSE_TRAFFIC = Boolean.getBoolean("crawler.verboseTraffic");
+
+    /**
+     * Work executed on a worker thread against a pooled page.
+     */
+    public interface PageTask<T> {
+        T run(Page page) throws Exception;
+    }
+
+    private final List<BrowserWorker> workers = new ArrayList<>();
+    private final BlockingQueue<BrowserWorker> idleWorkers;
+    private final int contextsPerWorker;
+    private final int maxPageUses;
+    private final boolean headless;
+    private final ResourceBlockingProfile blockingProfile;
+    private volatile boolean closed;
+    private int recycledWorkers;
+    private ResourceBlockingProfile.Stats traffic = new ResourceBlockingProfile.Stats(0, 0, 0, 0, 0, 0);
+    private int trafficTasks;
+
+    /**
+     * @param workerCount       number of Chromium processes (one thread each)
+     * @param contextsPerWorker contexts kept open per browser
+     * @param maxPageUses       a page is closed and replaced after this many tasks
+     * @param headless          launch Chromium without a window
+     */
+    public BrowserPool(int workerCount, int contextsPerWorker, int maxPageUses, boolean headless) {
+        this(workerCount, contextsPerWorker, maxPageUses, headless, null);
+    }
+
+    /**
+     * @param blockingProfile request-routing profile applied to every context,
+     *                        or null to load every resource
+     */
+    public BrowserPool(int workerCount, int contextsPerWorker, int maxPageUses, boolean headless,
+            ResourceBlockingProfile blockingProfile) {
+        if (workerCount < 1 || contextsPerWorker < 1 || maxPageUses < 1) {
+            throw new IllegalArgumentException("Pool sizes must be positive");
+        }
+        this.idleWorkers = new LinkedBlockingQueue<>(workerCount);
+        this.contextsPerWorker = contextsPerWorker;
+        this.maxPageUses = maxPageUses;
+        this.headless = headless;
+        this.blockingProfile = blockingProfile;
+        for (int i = 0; i < workerCount; i++) {
+            BrowserWorker worker = newWorker(i);
+            workers.add(worker);
+            idleWorkers.add(worker);
+        }
+    }
+
+    private BrowserWorker newWorker(int id) {
+        return new BrowserWorker(id, contextsPerWorker, maxPageUses, headless, blockingProfile, this::addTraffic);
+    }
+
+    public int size() {
+        return workers.size();
+    }
+
+    /**
+     * Traffic of every task run so far, with the blocking profile's savings.
+     * All zero without a profile.
+     */
+    public synchronized ResourceBlockingProfile.Stats getTraffic() {
+        return traffic;
+    }
+
+    /**
+     * Workers replaced because a task ran past its timeout.
+     */
+    public synchronized int getRecycledWorkers() {
+        return recycledWorkers;
+    }
+
+    private synchronized void addTraffic(ResourceBlockingProfile.Stats stats) {
+        traffic = traffic.plus(stats);
+        trafficTasks++;
+    }
+
+    /**
+     * Lease a worker, waiting up to the default lease timeout.
+     */
+    public Lease lease() throws InterruptedException, TimeoutException {
+        return lease(DEFAULT_LEASE_TIMEOUT_MS);
+    }
+
+    /**
+     * Lease a worker exclusively. The lease must be closed to return the worker.
+     */
+    public Lease lease(long timeoutMillis) throws InterruptedException, TimeoutException {
+        if (closed) {
+            throw new IllegalStateException("Browser pool is closed");
+        }
+        BrowserWorker worker = idleWorkers.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (worker == null) {
+            throw new TimeoutException("No browser worker available within " + timeoutMillis + " ms");
+        }
+        return new Lease(worker);
+    }
+
+    /**
+     * Lease a worker only if one is idle right now; null otherwise.
+     */
+    public Lease tryLease() {
+        if (closed) {
+            throw new IllegalStateException("Browser pool is closed");
+        }
+        BrowserWorker worker = idleWorkers.poll();
+        return worker == null ? null : new Lease(worker);
+    }
+
+    /**
+     * Convenience wrapper: lease a worker, run one task and return the worker.
+     */
+    public <T> T execute(PageTask<T> task) throws Exception {
+        try (Lease lease = lease()) {
+            return lease.run(task);
+        }
+    }
+
+    /**
+     * Synchronized with close(), so a worker returned while the pool closes
+     * is either still drained by close() or shut down here, never re-queued
+     * after the drain.
+     */
+    private synchronized void release(BrowserWorker worker) {
+        if (closed) {
+            worker.shutdown();
+        } else {
+            idleWorkers.offer(worker);
+        }
+    }
+
+    /**
+     * Retire a worker stuck in a task and put a new one in its place. The old
+     * one tears down its browser once the task returns.
+     */
+    private synchronized void recycle(BrowserWorker worker) {
+        worker.shutdown();
+        recycledWorkers++;
+        BrowserWorker replacement = newWorker(worker.id);
+        workers.set(workers.indexOf(worker), replacement);
+        System.err.println("Browser worker " + worker.id + " stuck in a task, replaced (recycle #" + recycledWorkers
+                + ")");
+        release(replacement);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (BrowserWorker worker : workers) {
+            // Busy workers are shut down when their lease is returned
+            if (idleWorkers.remove(worker)) {
+                worker.shutdown();
+            }
+        }
+        if (trafficTasks > 0) {
+            System.out.println("Browser pool traffic over " + trafficTasks + " tasks: " + traffic);
+        }
+    }
+
+    /**
+     * Exclusive hold on one worker. Tasks run on the worker's own thread.
+     */
+    public class Lease implements AutoCloseable {
+        private final BrowserWorker worker;
+        private boolean returned;
+
+        private Lease(BrowserWorker worker) {
+            this.worker = worker;
+        }
+
+        /**
+         * Run a task, giving up after the default task timeout.
+         */
+        public <T> T run(PageTask<T> task) throws Exception {
+            return run(task, DEFAULT_TASK_TIMEOUT_MS);
+        }
+
+        /**
+         * Run a task, giving up shortly after the caller's deadline.
+         */
+        public <T> T run(PageTask<T> task, Deadline deadline) throws Exception {
+            return run(task, deadline.remainingMillis() + DEADLINE_GRACE_MS);
+        }
+
+        /**
+         * Run a task, giving up after timeoutMillis. On timeout the worker is
+         * recycled and this lease is returned.
+         */
+        public <T> T run(PageTask<T> task, long timeoutMillis) throws Exception {
+            if (returned) {
+                throw new IllegalStateException("Lease already returned");
+            }
+            Future<T> result = worker.submit(task);
+            try {
+                return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                result.cancel(true);
+                returned = true;
+                recycle(worker);
+                throw new TimeoutException("Browser worker " + worker.id + " did not finish within " + timeoutMillis
+                        + " ms");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+
+        public int workerId() {
+            return worker.id;
+        }
+
+        @Override
+        public void close() {
+            if (!returned) {
+                returned = true;
+                release(worker);
+            }
+        }
+    }
+
+    /**
+     * One Chromium process plus its contexts, confined to a single thread.
+     */
+    private static class BrowserWorker {
+        private final int id;
+        private final int maxPageUses;
+        private final boolean headless;
+        private final ResourceBlockingProfile blockingProfile;
+        private final Consumer<ResourceBlockingProfile.Stats> trafficSink;
+        private final ExecutorService thread;
+        private final ContextSlot[] slots;
+
+        // Only touched from the worker thread
+        private Playwright playwright;
+        private Browser browser;
+        private volatile boolean disconnected;
+        private int nextSlot;
+        private int restarts;
+
+        BrowserWorker(int id, int contextsPerWorker, int maxPageUses, boolean headless,
+                ResourceBlockingProfile blockingProfile, Consumer<ResourceBlockingProfile.Stats> trafficSink) {
+            this.id = id;
+            this.maxPageUses = maxPageUses;
+            this.headless = headless;
+            this.blockingProfile = blockingProfile;
+            this.trafficSink = trafficSink;
+            this.slots = new ContextSlot[contextsPerWorker];
+            this.thread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "browser-worker-" + id);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        <T> Future<T> submit(PageTask<T> task) {
+            return thread.submit(() -> {
+                ensureHealthy();
+                Page page = nextPage();
+                if (blockingProfile != null) {
+                    blockingProfile.begin(page);
+                }
+                try {
+                    return task.run(page);
+                } catch (PlaywrightException e) {
+                    // A crashed renderer or browser shows up as a PlaywrightException;
+                    // force a health check on the next task instead of reusing the page.
+                    if (browser == null || !browser.isConnected()) {
+                        disconnected = true;
+                    } else {
+                        closeQuietly(page);
+                    }
+                    throw e;
+                } finally {
+                    if (blockingProfile != null) {
+                        ResourceBlockingProfile.Stats stats = blockingProfile.end(page);
+                        trafficSink.accept(stats);
+                        if (VERBOSE_TRAFFIC) {
+                            System.out.println("Browser worker " + id + " traffic: " + stats);
+                        }
+                    }
+                }
+            });
+        }
+
+        private void ensureHealthy() {
+            if (browser != null && !disconnected && browser.isConnected()) {
+                return;
+            }
+            if (browser != null) {
+                restarts++;
+                System.err.println("Browser worker " + id + " lost Chromium, restarting (restart #" + restarts + ")");
+            }
+            teardown();
+            playwright = Playwright.create();
+            browser = playwright.chromium().launch(new BrowserType.LaunchOptions().setHeadless(headless));
+            browser.onDisconnected(b -> disconnected = true);
+            disconnected = false;
+            for (int i = 0; i < slots.length; i++) {
+                BrowserContext context = browser.newContext(new Browser.NewContextOptions()
+                        .setUserAgent(USER_AGENT)
+                        .setViewportSize(1920, 1080));
+                if (blockingProfile != null) {
+                    blockingProfile.apply(context);
+                }
+                slots[i] = new ContextSlot(context);
+            }
+        }
+
+        /**
+         * Round-robin over contexts, recycling a page after maxPageUses tasks.
+         */
+        private Page nextPage() {
+            ContextSlot slot = slots[nextSlot];
+            nextSlot = (nextSlot + 1) % slots.length;
+
+            if (slot.page == null || slot.page.isClosed() || slot.uses >= maxPageUses) {
+                closeQuietly(slot.page);
+                slot.page = slot.context.newPage();
+                slot.uses = 0;
+                if (blockingProfile != null) {
+                    blockingProfile.attach(slot.page);
+                }
+            }
+            slot.uses++;
+            return slot.page;
+        }
+
+        private void teardown() {
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != null) {
+                    try {
+                        slots[i].context.close();
+                    } catch (Exception ignored) {
+                    }
+                    slots[i] = null;
+                }
+            }
+            if (browser != null) {
+                try {
+                    browser.close();
+                } catch (Exception ignored) {
+                }
+                browser = null;
+            }
+            if (playwright != null) {
+                try {
+                    playwright.close();
+                } catch (Exception ignored) {
+                }
+                playwright = null;
+            }
+        }
+
+        void shutdown() {
+            thread.submit(this::teardown);
+            thread.shutdown();
+        }
+
+        private static void closeQuietly(Page page) {
+            if (page != null && !page.isClosed()) {
+                try {
+                    page.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    private static class ContextSlot {
+        private final BrowserContext context;
+        private Page page;
+        private int uses;
+
+        ContextSlot(BrowserContext context) {
+            this.context = context;
+        }
+    }
+}
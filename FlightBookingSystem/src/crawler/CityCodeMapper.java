@@ -1,6 +1,7 @@
 package crawler;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class CityCodeMapper {
@@ -236,6 +237,99 @@ public class CityCodeMapper {
         INTERNATIONAL_MAPPINGS.put("akl", "Auckland");
     }
 
+    // Extra search terms: Chinese names and other common spellings
+    private static final Map<String, String[]> ALIASES = new HashMap<>();
+
+    static {
+        ALIASES.put("bjs", new String[] { "北京", "Peking" });
+        ALIASES.put("sha", new String[] { "上海" });
+        ALIASES.put("tsn", new String[] { "天津" });
+        ALIASES.put("ckg", new String[] { "重庆", "Chungking" });
+        ALIASES.put("can", new String[] { "广州", "Canton" });
+        ALIASES.put("szx", new String[] { "深圳" });
+        ALIASES.put("ctu", new String[] { "成都" });
+        ALIASES.put("hgh", new String[] { "杭州" });
+        ALIASES.put("xmn", new String[] { "厦门", "Amoy" });
+        ALIASES.put("nkg", new String[] { "南京", "Nanking" });
+        ALIASES.put("wuh", new String[] { "武汉" });
+        ALIASES.put("csx", new String[] { "长沙" });
+        ALIASES.put("kwe", new String[] { "贵阳" });
+        ALIASES.put("kmg", new String[] { "昆明" });
+        ALIASES.put("sia", new String[] { "西安" });
+        ALIASES.put("sjw", new String[] { "石家庄" });
+        ALIASES.put("tyn", new String[] { "太原" });
+        ALIASES.put("het", new String[] { "呼和浩特" });
+        ALIASES.put("hrb", new String[] { "哈尔滨" });
+        ALIASES.put("cgq", new String[] { "长春" });
+        ALIASES.put("she", new String[] { "沈阳", "Mukden" });
+        ALIASES.put("dlc", new String[] { "大连" });
+        ALIASES.put("foc", new String[] { "福州" });
+        ALIASES.put("wnz", new String[] { "温州" });
+        ALIASES.put("ngb", new String[] { "宁波" });
+        ALIASES.put("tna", new String[] { "济南" });
+        ALIASES.put("tao", new String[] { "青岛", "Tsingtao" });
+        ALIASES.put("ynt", new String[] { "烟台" });
+        ALIASES.put("hfe", new String[] { "合肥" });
+        ALIASES.put("cgo", new String[] { "郑州" });
+        ALIASES.put("khn", new String[] { "南昌" });
+        ALIASES.put("nng", new String[] { "南宁" });
+        ALIASES.put("kwl", new String[] { "桂林" });
+        ALIASES.put("hak", new String[] { "海口" });
+        ALIASES.put("syx", new String[] { "三亚" });
+        ALIASES.put("lhw", new String[] { "兰州" });
+        ALIASES.put("xnn", new String[] { "西宁" });
+        ALIASES.put("inc", new String[] { "银川" });
+        ALIASES.put("urc", new String[] { "乌鲁木齐", "Wulumuqi" });
+        ALIASES.put("lxa", new String[] { "拉萨" });
+        ALIASES.put("ljg", new String[] { "丽江" });
+        ALIASES.put("hkg", new String[] { "香港", "Xianggang" });
+        ALIASES.put("mfm", new String[] { "澳门", "Aomen", "Macao" });
+        ALIASES.put("tyo", new String[] { "东京" });
+        ALIASES.put("sel", new String[] { "首尔" });
+        ALIASES.put("osa", new String[] { "大阪" });
+        ALIASES.put("sin", new String[] { "新加坡" });
+        ALIASES.put("bkk", new String[] { "曼谷" });
+        ALIASES.put("kul", new String[] { "吉隆坡" });
+        ALIASES.put("tpe", new String[] { "台北" });
+        ALIASES.put("dxb", new String[] { "迪拜" });
+        ALIASES.put("lon", new String[] { "伦敦" });
+        ALIASES.put("par", new String[] { "巴黎" });
+        ALIASES.put("fra", new String[] { "法兰克福" });
+        ALIASES.put("nyc", new String[] { "纽约" });
+        ALIASES.put("lax", new String[] { "洛杉矶" });
+        ALIASES.put("sfo", new String[] { "旧金山" });
+        ALIASES.put("syd", new String[] { "悉尼" });
+        ALIASES.put("mel", new String[] { "墨尔本" });
+    }
+
+    // Built once from the maps above; backs getCityCode and searchCities
+    private static final CityIndex CITY_INDEX = CityIndex.build(DOMESTIC_MAPPINGS, INTERNATIONAL_MAPPINGS, ALIASES);
+
+    // Metadata indexed by packed AirportCode, filled once from the maps above
+    private static final String[] NAME_BY_CODE = new String[AirportCode.SPACE];
+    private static final byte[] KIND_BY_CODE = new byte[AirportCode.SPACE];
+    private static final byte UNKNOWN = 0;
+    private static final byte DOMESTIC = 1;
+    private static final byte INTERNATIONAL = 2;
+
+    static {
+        // International first, so a code in both maps (hkg) ends up domestic
+        for (Map.Entry<String, String> entry : INTERNATIONAL_MAPPINGS.entrySet()) {
+            register(entry.getKey(), entry.getValue(), INTERNATIONAL);
+        }
+        for (Map.Entry<String, String> entry : DOMESTIC_MAPPINGS.entrySet()) {
+            register(entry.getKey(), entry.getValue(), DOMESTIC);
+        }
+    }
+
+    private static void register(String code, String name, byte kind) {
+        int packed = AirportCode.pack(code);
+        if (packed != AirportCode.NONE) {
+            NAME_BY_CODE[packed] = name;
+            KIND_BY_CODE[packed] = kind;
+        }
+    }
+
     /**
      * Get the city name for a given airport/city code.
      * Checks domestic list first, then international.
@@ -246,23 +340,44 @@ public class CityCodeMapper {
     public static String getCityName(String code) {
         if (code == null)
             return "Unknown";
-        String lowerCode = code.toLowerCase();
-
-        if (DOMESTIC_MAPPINGS.containsKey(lowerCode)) {
-            return DOMESTIC_MAPPINGS.get(lowerCode);
-        }
-        if (INTERNATIONAL_MAPPINGS.containsKey(lowerCode)) {
-            return INTERNATIONAL_MAPPINGS.get(lowerCode);
+        int packed = AirportCode.pack(code);
+        if (packed == AirportCode.NONE) {
+            // Not a 3-letter code; a few legacy keys (e.g. "xi'an") live only in the maps
+            String lowerCode = code.toLowerCase();
+            String name = DOMESTIC_MAPPINGS.get(lowerCode);
+            if (name == null) {
+                name = INTERNATIONAL_MAPPINGS.get(lowerCode);
+            }
+            return name != null ? name : "Unknown Code: " + code;
         }
-        return "Unknown Code: " + code;
+        String name = NAME_BY_CODE[packed];
+        return name != null ? name : "Unknown Code: " + code;
+    }
+
+    /**
+     * City name for a packed code, or null if unknown.
+     */
+    public static String getCityName(int code) {
+        return AirportCode.isValid(code) ? NAME_BY_CODE[code] : null;
+    }
+
+    public static boolean isDomestic(int code) {
+        return AirportCode.isValid(code) && KIND_BY_CODE[code] == DOMESTIC;
+    }
+
+    public static boolean isKnown(int code) {
+        return AirportCode.isValid(code) && KIND_BY_CODE[code] != UNKNOWN;
     }
 
     /**
      * Check if a code corresponds to a domestic location.
      */
     public static String determineFlightType(String origin, String destination) {
-        if (origin != null && destination != null && DOMESTIC_MAPPINGS.containsKey(origin.toLowerCase())
-                && DOMESTIC_MAPPINGS.containsKey(destination.toLowerCase())) {
+        return determineFlightType(AirportCode.pack(origin), AirportCode.pack(destination));
+    }
+
+    public static String determineFlightType(int origin, int destination) {
+        if (isDomestic(origin) && isDomestic(destination)) {
             return "Domestic";
         }
         return "International";
@@ -284,39 +399,22 @@ public class CityCodeMapper {
 
     /**
      * Get the city code for a given city name.
-     * Case insensitive search.
+     * Case insensitive; accepts codes, name prefixes, Chinese names and
+     * small typos. The best ranked match wins, so the result is stable.
      * 
      * @param name The city name (e.g., "Shanghai")
      * @return The 3-letter code (e.g., "sha"), or null if not found.
      */
     public static String getCityCode(String name) {
-        // fuzzy mapping
-
         if (name == null)
             return null;
-        String lowerName = name.trim().toLowerCase();
-
-        // Check if the input is already a valid code (length 3)
-        if (lowerName.length() == 3) {
-            if (DOMESTIC_MAPPINGS.containsKey(lowerName) || INTERNATIONAL_MAPPINGS.containsKey(lowerName)) {
-                return lowerName;
-            }
-        }
-
-        // Search in domestic mappings
-        for (Map.Entry<String, String> entry : DOMESTIC_MAPPINGS.entrySet()) {
-            if (entry.getValue().toLowerCase().contains(lowerName)) {
-                return entry.getKey();
-            }
-        }
-
-        // Search in international mappings
-        for (Map.Entry<String, String> entry : INTERNATIONAL_MAPPINGS.entrySet()) {
-            if (entry.getValue().toLowerCase().contains(lowerName)) {
-                return entry.getKey();
-            }
-        }
+        return CITY_INDEX.resolve(name);
+    }
 
-        return null;
+    /**
+     * Ranked city suggestions for free-text input, best first.
+     */
+    public static List<CityIndex.Match> searchCities(String query, int limit) {
+        return CITY_INDEX.search(query, limit);
     }
-}
\ No newline at end of file
+}
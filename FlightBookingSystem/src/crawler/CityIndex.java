@@ -0,0 +1,380 @@
+package crawler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable search index over city codes, names and aliases.
+ * - exact 3-letter code and exact name/alias lookups are hash hits
+ * - a prefix trie over names and aliases (plus a second one over the later
+ * words of multi-word names), each node holding its cities in rank order
+ * - a trigram index for substrings and typos ("shangai" -> Shanghai)
+ * Results are ranked by match quality, then domestic first, then name and
+ * code, so the same query always yields the same order.
+ */
+public class CityIndex {
+
+    private static final int SCORE_CODE = 1000;
+    private static final int SCORE_EXACT = 900;
+    private static final int SCORE_PREFIX = 800;
+    private static final int SCORE_WORD_PREFIX = 650;
+    private static final int SCORE_SUBSTRING = 600;
+    private static final int SCORE_FUZZY = 500;
+    // Minimum trigram similarity (Dice coefficient) for a typo match
+    private static final double FUZZY_THRESHOLD = 0.45;
+
+    /**
+     * One ranked search result.
+     */
+    public static class Match {
+        private final String code;
+        private final String name;
+        private final boolean domestic;
+        private final int score;
+
+        Match(String code, String name, boolean domestic, int score) {
+            this.code = code;
+            this.name = name;
+            this.domestic = domestic;
+            this.score = score;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDomestic() {
+            return domestic;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + code.toUpperCase() + ")";
+        }
+    }
+
+    private static class City {
+        final String code;
+        final String name;
+        final boolean domestic;
+        final String[] terms;
+        // Trigrams of each term, for similarity scoring
+        final String[][] termGrams;
+
+        City(String code, String name, boolean domestic, String[] terms) {
+            this.code = code;
+            this.name = name;
+            this.domestic = domestic;
+            this.terms = terms;
+            this.termGrams = new String[terms.length][];
+            for (int i = 0; i < terms.length; i++) {
+                termGrams[i] = trigramsOf(terms[i]).toArray(new String[0]);
+            }
+        }
+    }
+
+    private static class TrieNode {
+        final Map<Character, TrieNode> children = new HashMap<>();
+        // Cities below this node, in rank order once the index is built
+        int[] cities = new int[0];
+    }
+
+    // Ordered by rank: domestic first, then name, then code
+    private final City[] cities;
+    // City id by packed AirportCode, -1 if absent
+    private final int[] idByCode = new int[AirportCode.SPACE];
+    private final Map<String, int[]> byTerm = new HashMap<>();
+    private final TrieNode names = new TrieNode();
+    private final TrieNode words = new TrieNode();
+    private final Map<String, int[]> trigrams = new HashMap<>();
+
+    private CityIndex(List<City> sorted) {
+        this.cities = sorted.toArray(new City[0]);
+        Arrays.fill(idByCode, -1);
+        Map<String, Set<Integer>> termPostings = new HashMap<>();
+        Map<String, Set<Integer>> gramPostings = new HashMap<>();
+        for (int id = 0; id < cities.length; id++) {
+            City city = cities[id];
+            idByCode[AirportCode.pack(city.code)] = id;
+            for (String term : city.terms) {
+                termPostings.computeIfAbsent(term, k -> new LinkedHashSet<>()).add(id);
+                insert(names, term, id);
+                String[] parts = term.split(" ");
+                for (int i = 1; i < parts.length; i++) {
+                    insert(words, parts[i], id);
+                }
+                for (String gram : trigramsOf(term)) {
+                    gramPostings.computeIfAbsent(gram, k -> new LinkedHashSet<>()).add(id);
+                }
+            }
+        }
+        termPostings.forEach((term, ids) -> byTerm.put(term, toArray(ids)));
+        gramPostings.forEach((gram, ids) -> trigrams.put(gram, toArray(ids)));
+    }
+
+    /**
+     * Build the index. A code present in both maps is treated as domestic.
+     *
+     * @param aliases extra search terms per code (Chinese names, other spellings)
+     */
+    public static CityIndex build(Map<String, String> domestic, Map<String, String> international,
+            Map<String, String[]> aliases) {
+        Map<String, City> byCode = new TreeMap<>();
+        addAll(byCode, international, false, aliases);
+        addAll(byCode, domestic, true, aliases);
+
+        List<City> sorted = new ArrayList<>(byCode.values());
+        sorted.sort(Comparator.comparing((City c) -> !c.domestic)
+                .thenComparing(c -> c.name.toLowerCase())
+                .thenComparing(c -> c.code));
+        return new CityIndex(sorted);
+    }
+
+    private static void addAll(Map<String, City> target, Map<String, String> mappings, boolean domestic,
+            Map<String, String[]> aliases) {
+        for (Map.Entry<String, String> entry : mappings.entrySet()) {
+            String code = entry.getKey().toLowerCase();
+            if (!isCode(code)) {
+                continue;
+            }
+            String name = entry.getValue().replace("(", "").replace(")", "").trim();
+            Set<String> terms = new LinkedHashSet<>();
+            addTerm(terms, name);
+            for (String alias : aliases.getOrDefault(code, new String[0])) {
+                addTerm(terms, alias);
+            }
+            target.put(code, new City(code, name, domestic, terms.toArray(new String[0])));
+        }
+    }
+
+    private static void addTerm(Set<String> terms, String text) {
+        String term = normalize(text);
+        if (!term.isEmpty()) {
+            terms.add(term);
+            // "kuala lumpur" is also found as "kualalumpur"
+            if (term.indexOf(' ') >= 0) {
+                terms.add(term.replace(" ", ""));
+            }
+        }
+    }
+
+    /**
+     * Ranked matches for free text: a code, a name or its prefix, a Chinese
+     * name, or a misspelling.
+     */
+    public List<Match> search(String query, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Map<Integer, Integer> scores = new HashMap<>();
+
+        int codeHit = idOf(AirportCode.pack(q));
+        if (codeHit >= 0) {
+            offer(scores, codeHit, SCORE_CODE);
+        }
+        int[] exact = byTerm.get(q);
+        if (exact != null) {
+            for (int id : exact) {
+                offer(scores, id, SCORE_EXACT);
+            }
+        }
+        offerPrefix(scores, names, q, SCORE_PREFIX, limit);
+        offerPrefix(scores, words, q, SCORE_WORD_PREFIX, limit);
+
+        if (scores.size() < limit) {
+            offerSimilar(scores, q);
+        }
+
+        List<Integer> ids = new ArrayList<>(scores.keySet());
+        // Rank by score, then by id (ids are already in domestic/name/code order)
+        ids.sort((a, b) -> {
+            int byScore = Integer.compare(scores.get(b), scores.get(a));
+            return byScore != 0 ? byScore : Integer.compare(a, b);
+        });
+        List<Match> matches = new ArrayList<>(Math.min(limit, ids.size()));
+        for (int i = 0; i < ids.size() && i < limit; i++) {
+            City city = cities[ids.get(i)];
+            matches.add(new Match(city.code, city.name, city.domestic, scores.get(ids.get(i))));
+        }
+        return matches;
+    }
+
+    /**
+     * Code of the best match, or null if nothing matches.
+     */
+    public String resolve(String query) {
+        List<Match> best = search(query, 1);
+        return best.isEmpty() ? null : best.get(0).getCode();
+    }
+
+    /**
+     * Display name for a code, or null if unknown.
+     */
+    public String name(String code) {
+        int id = idOf(AirportCode.pack(code));
+        return id < 0 ? null : cities[id].name;
+    }
+
+    private int idOf(int packedCode) {
+        return AirportCode.isValid(packedCode) ? idByCode[packedCode] : -1;
+    }
+
+    public int size() {
+        return cities.length;
+    }
+
+    private void offerPrefix(Map<Integer, Integer> scores, TrieNode root, String q, int score, int limit) {
+        TrieNode node = root;
+        for (int i = 0; i < q.length() && node != null; i++) {
+            node = node.children.get(q.charAt(i));
+        }
+        if (node == null) {
+            return;
+        }
+        // Node lists are in rank order, so the first few are the best ones
+        int taken = 0;
+        for (int id : node.cities) {
+            if (taken++ >= limit) {
+                break;
+            }
+            offer(scores, id, score);
+        }
+    }
+
+    /**
+     * Substring and typo matches through shared trigrams.
+     */
+    private void offerSimilar(Map<Integer, Integer> scores, String q) {
+        Set<String> queryGrams = new LinkedHashSet<>(trigramsOf(q));
+        Set<Integer> candidates = new LinkedHashSet<>();
+        for (String gram : queryGrams) {
+            int[] ids = trigrams.get(gram);
+            if (ids != null) {
+                for (int id : ids) {
+                    candidates.add(id);
+                }
+            }
+        }
+        for (int id : candidates) {
+            double best = 0;
+            boolean substring = false;
+            City city = cities[id];
+            for (int t = 0; t < city.terms.length; t++) {
+                if (q.length() >= 3 && city.terms[t].contains(q)) {
+                    substring = true;
+                    break;
+                }
+                int shared = 0;
+                for (String gram : city.termGrams[t]) {
+                    if (queryGrams.contains(gram)) {
+                        shared++;
+                    }
+                }
+                best = Math.max(best, 2.0 * shared / (queryGrams.size() + city.termGrams[t].length));
+            }
+            if (substring) {
+                offer(scores, id, SCORE_SUBSTRING);
+            } else if (best >= FUZZY_THRESHOLD) {
+                offer(scores, id, (int) (SCORE_FUZZY * best));
+            }
+        }
+    }
+
+    private static void offer(Map<Integer, Integer> scores, int id, int score) {
+        scores.merge(id, score, Math::max);
+    }
+
+    private static void insert(TrieNode root, String term, int id) {
+        TrieNode node = root;
+        for (int i = 0; i < term.length(); i++) {
+            node = node.children.computeIfAbsent(term.charAt(i), k -> new TrieNode());
+            // Ids are inserted in rank order; skip a repeat from another term of the same city
+            int[] ids = node.cities;
+            if (ids.length == 0 || ids[ids.length - 1] != id) {
+                ids = Arrays.copyOf(ids, ids.length + 1);
+                ids[ids.length - 1] = id;
+                node.cities = ids;
+            }
+        }
+    }
+
+    /**
+     * Trigrams of the term padded with a space on each side, so two-character
+     * names (e.g. Chinese) still produce grams.
+     */
+    private static List<String> trigramsOf(String term) {
+        String padded = " " + term + " ";
+        List<String> grams = new ArrayList<>(padded.length());
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * Lower case; apostrophes dropped ("Xi'an" -> "xian"); any other run of
+     * non letters/digits becomes one space.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\'' || c == '’') {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && out.length() > 0) {
+                    out.append(' ');
+                }
+                pendingSpace = false;
+                out.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isCode(String code) {
+        if (code.length() != 3) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            char c = code.charAt(i);
+            if (c < 'a' || c > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] toArray(Set<Integer> ids) {
+        int[] array = new int[ids.size()];
+        int i = 0;
+        for (int id : ids) {
+            array[i++] = id;
+        }
+        return array;
+    }
+}
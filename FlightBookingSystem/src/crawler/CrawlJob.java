@@ -0,0 +1,146 @@
+package crawler;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One route/date page to crawl.
+ * Jobs are ordered by priority (lower first), then by submission order.
+ */
+public class CrawlJob implements Comparable<CrawlJob> {
+
+    // 用于从URL中提取三字码和日期 (e.g., oneway-sha-hjj?depdate=2025-12-03)
+    private static final Pattern URL_ROUTE_PATTERN = Pattern
+            .compile("/oneway-(\\w{3})-(\\w{3})\\?depdate=(\\d{4}-\\d{2}-\\d{2})");
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final String originCode;
+    private final String destinationCode;
+    private final String date;
+    private final String url;
+    private final String host;
+    private final long priority;
+    private final long sequence;
+    private int attempts;
+    private long notBeforeMillis;
+    // Cheapest fare seen by the last attempt, in fen; -1 if none
+    private long lowestPriceFen = -1;
+
+    public CrawlJob(String originCode, String destinationCode, String date, String url, long priority) {
+        this.originCode = AirportCode.canonical(originCode);
+        this.destinationCode = AirportCode.canonical(destinationCode);
+        this.date = date;
+        this.url = url;
+        this.priority = priority;
+        this.sequence = SEQUENCE.getAndIncrement();
+        String parsedHost = null;
+        try {
+            parsedHost = URI.create(url).getHost();
+        } catch (IllegalArgumentException ignored) {
+        }
+        this.host = parsedHost != null ? parsedHost : "unknown";
+    }
+
+    /**
+     * Build a job from a generated result-page URL. Nearer departure dates get
+     * a higher priority (smaller number).
+     */
+    public static CrawlJob fromUrl(String url) {
+        Matcher matcher = URL_ROUTE_PATTERN.matcher(url);
+        if (!matcher.find()) {
+            return new CrawlJob("N/A", "N/A", "N/A", url, Long.MAX_VALUE);
+        }
+        String date = matcher.group(3);
+        return new CrawlJob(matcher.group(1), matcher.group(2), date, url, priorityForDate(date));
+    }
+
+    /**
+     * Days from today to departure; past or unparsable dates sort last.
+     */
+    public static long priorityForDate(String date) {
+        try {
+            long days = LocalDate.parse(date).toEpochDay() - LocalDate.now().toEpochDay();
+            return days >= 0 ? days : Long.MAX_VALUE;
+        } catch (RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    public String getOriginCode() {
+        return originCode;
+    }
+
+    public String getDestinationCode() {
+        return destinationCode;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public long getPriority() {
+        return priority;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    void recordAttempt() {
+        attempts++;
+    }
+
+    public long getNotBeforeMillis() {
+        return notBeforeMillis;
+    }
+
+    void setNotBeforeMillis(long notBeforeMillis) {
+        this.notBeforeMillis = notBeforeMillis;
+    }
+
+    public long getLowestPriceFen() {
+        return lowestPriceFen;
+    }
+
+    void setLowestPriceFen(long lowestPriceFen) {
+        this.lowestPriceFen = lowestPriceFen;
+    }
+
+    /**
+     * Copy of this job with another priority, e.g. a freshness deadline.
+     */
+    public CrawlJob withPriority(long newPriority) {
+        return new CrawlJob(originCode, destinationCode, date, url, newPriority);
+    }
+
+    /**
+     * Stable identity of the route/date, independent of URL parameters.
+     */
+    public String key() {
+        return originCode + "-" + destinationCode + "@" + date;
+    }
+
+    @Override
+    public int compareTo(CrawlJob other) {
+        if (this.priority != other.priority) {
+            return Long.compare(this.priority, other.priority);
+        }
+        return Long.compare(this.sequence, other.sequence);
+    }
+
+    @Override
+    public String toString() {
+        return key() + " (attempt " + (attempts + 1) + ")";
+    }
+}
@@ -0,0 +1,336 @@
+package crawler;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only checkpoint log of crawl outcomes, one line per attempt:
+ * millis, job key, outcome, attempt number and the lowest fare seen (fen,
+ * -1 if none), tab separated. Consecutive lowest fares feed a per-job
+ * volatility estimate used by incremental crawls.
+ *
+ * Batch runs are delimited by marker lines (millis, "#run", START or END,
+ * run key). The per-job history is kept across runs, but resume() only
+ * skips jobs finished in the current run, so an interrupted run picks up
+ * where it stopped while the next run after a completed one crawls
+ * everything again.
+ *
+ * Lines are written straight to the file channel but only forced to disk
+ * every SYNC_BATCH records or SYNC_INTERVAL_MS, so a crash loses at most the
+ * last batch (those jobs are simply crawled again). On open the log is
+ * replayed into the latest state per job and a torn last line is cut off.
+ */
+public class CrawlJournal implements Closeable {
+
+    private static final int SYNC_BATCH = 32;
+    private static final long SYNC_INTERVAL_MS = 2000;
+    // Failed jobs are retried after this, doubled per recorded failure, up to the cap
+    private static final long RETRY_BACKOFF_MS = 60000;
+    private static final long MAX_RETRY_BACKOFF_MS = 60 * 60000;
+    // Weight of the newest relative price change in the volatility EWMA
+    private static final double VOLATILITY_ALPHA = 0.3;
+    // Job key column of run markers (never a valid job key)
+    private static final String RUN_MARKER = "#run";
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, JobState> states = new HashMap<>();
+    private int unsynced;
+    private long lastSync = System.currentTimeMillis();
+    // Runs started so far, and whether the latest one has not completed
+    private int runSequence;
+    private String runKey;
+    private boolean runOpen;
+
+    private CrawlJournal(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Open (creating if needed) and replay the journal.
+     */
+    public static CrawlJournal open(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        CrawlJournal journal = new CrawlJournal(file, channel);
+        try {
+            journal.replay();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    private void replay() throws IOException {
+        long validLength = 0;
+        long offset = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (offset > channel.size()) {
+                    // Last line has no newline: it was torn by a crash
+                    break;
+                }
+                validLength = offset;
+                apply(line);
+            }
+        }
+        if (validLength < channel.size()) {
+            System.err.println("Crawl journal " + file + ": dropping " + (channel.size() - validLength)
+                    + " bytes of a torn record");
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+    }
+
+    private void apply(String line) {
+        String[] fields = line.split("\t");
+        if (fields.length < 4) {
+            return;
+        }
+        if (RUN_MARKER.equals(fields[1])) {
+            if ("START".equals(fields[2])) {
+                runSequence++;
+                runKey = fields[3];
+                runOpen = true;
+            } else if ("END".equals(fields[2])) {
+                runOpen = false;
+            }
+            return;
+        }
+        try {
+            long millis = Long.parseLong(fields[0]);
+            CrawlOutcome outcome = CrawlOutcome.valueOf(fields[2]);
+            long priceFen = fields.length > 4 ? Long.parseLong(fields[4]) : -1;
+            JobState state = states.computeIfAbsent(fields[1], k -> new JobState());
+            state.lastOutcome = outcome;
+            state.lastMillis = millis;
+            if (outcome.isRetryable()) {
+                state.failures++;
+            } else {
+                state.failures = 0;
+                state.lastFinishedMillis = millis;
+                state.finishedRun = runSequence;
+            }
+            if (outcome == CrawlOutcome.SUCCESS && priceFen > 0) {
+                if (state.lastPriceFen > 0) {
+                    double change = Math.abs(priceFen - state.lastPriceFen) / (double) state.lastPriceFen;
+                    state.volatility = state.priceSamples == 1 ? change
+                            : VOLATILITY_ALPHA * change + (1 - VOLATILITY_ALPHA) * state.volatility;
+                }
+                state.lastPriceFen = priceFen;
+                state.priceSamples++;
+            }
+        } catch (IllegalArgumentException e) {
+            // Unreadable line; skip it
+        }
+    }
+
+    /**
+     * Append one outcome; fsync if the batch is full or the interval passed.
+     */
+    public synchronized void record(CrawlJob job, CrawlOutcome outcome) {
+        long now = System.currentTimeMillis();
+        try {
+            append(now + "\t" + job.key() + "\t" + outcome + "\t" + job.getAttempts() + "\t"
+                    + job.getLowestPriceFen());
+            if (unsynced >= SYNC_BATCH || now - lastSync >= SYNC_INTERVAL_MS) {
+                sync();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write crawl journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start a batch run, or carry on with the latest one if it was started
+     * with the same key and never completed (unless fresh). The key should
+     * identify the job source, e.g. the command-line arguments.
+     *
+     * @return true if an interrupted run is resumed
+     */
+    public synchronized boolean beginRun(String key, boolean fresh) throws IOException {
+        String cleanKey = key.replace('\t', ' ').replace('\n', ' ');
+        if (!fresh && runOpen && cleanKey.equals(runKey)) {
+            return true;
+        }
+        append(System.currentTimeMillis() + "\t" + RUN_MARKER + "\tSTART\t" + cleanKey);
+        sync();
+        return false;
+    }
+
+    /**
+     * The current run went through its whole job source; the next run starts
+     * afresh.
+     */
+    public synchronized void completeRun() throws IOException {
+        if (runOpen) {
+            append(System.currentTimeMillis() + "\t" + RUN_MARKER + "\tEND\t" + runKey);
+            sync();
+        }
+    }
+
+    private void append(String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        apply(line);
+        unsynced++;
+    }
+
+    public synchronized void sync() throws IOException {
+        if (unsynced > 0) {
+            channel.force(false);
+            unsynced = 0;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * The job's last recorded outcome was SUCCESS or EMPTY, within the
+     * current run.
+     */
+    public synchronized boolean isFinished(String key) {
+        JobState state = states.get(key);
+        return state != null && isFinishedInRun(state);
+    }
+
+    private boolean isFinishedInRun(JobState state) {
+        return runOpen && !state.lastOutcome.isRetryable() && state.finishedRun == runSequence;
+    }
+
+    /**
+     * Consecutive failures recorded since the job last finished.
+     */
+    public synchronized int failures(String key) {
+        JobState state = states.get(key);
+        return state == null ? 0 : state.failures;
+    }
+
+    /**
+     * Earliest time a previously failed job should be retried, or 0.
+     */
+    public synchronized long retryNotBefore(String key) {
+        JobState state = states.get(key);
+        if (state == null || state.failures == 0) {
+            return 0;
+        }
+        long backoff = RETRY_BACKOFF_MS << Math.min(state.failures - 1, 16);
+        return state.lastMillis + Math.min(backoff, MAX_RETRY_BACKOFF_MS);
+    }
+
+    /**
+     * When the job last finished (SUCCESS or EMPTY), or 0 if never.
+     */
+    public synchronized long lastFinishedMillis(String key) {
+        JobState state = states.get(key);
+        return state == null ? 0 : state.lastFinishedMillis;
+    }
+
+    /**
+     * EWMA of the relative change in lowest fare between successive crawls,
+     * e.g. 0.05 for fares that typically move 5%; 0 until two prices are seen.
+     */
+    public synchronized double volatility(String key) {
+        JobState state = states.get(key);
+        return state == null ? 0 : state.volatility;
+    }
+
+    /**
+     * Jobs finished in the current run.
+     */
+    public synchronized int finishedCount() {
+        int finished = 0;
+        for (JobState state : states.values()) {
+            if (isFinishedInRun(state)) {
+                finished++;
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Filter a job stream for a resumed run: jobs finished in this run are
+     * skipped and failed ones carry their retry backoff as not-before time.
+     */
+    public Iterator<CrawlJob> resume(Iterator<CrawlJob> jobs) {
+        return new Iterator<CrawlJob>() {
+            private CrawlJob next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && jobs.hasNext()) {
+                    CrawlJob candidate = jobs.next();
+                    if (isFinished(candidate.key())) {
+                        continue;
+                    }
+                    candidate.setNotBeforeMillis(retryNotBefore(candidate.key()));
+                    next = candidate;
+                }
+                return next != null;
+            }
+
+            @Override
+            public CrawlJob next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                CrawlJob job = next;
+                next = null;
+                return job;
+            }
+        };
+    }
+
+    /**
+     * Forget all recorded jobs and start an empty journal.
+     */
+    public synchronized void reset() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        states.clear();
+        unsynced = 0;
+        runSequence = 0;
+        runKey = null;
+        runOpen = false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static class JobState {
+        private CrawlOutcome lastOutcome;
+        private long lastMillis;
+        private int failures;
+        private long lastFinishedMillis;
+        private int finishedRun;
+        private long lastPriceFen = -1;
+        private int priceSamples;
+        private double volatility;
+    }
+}
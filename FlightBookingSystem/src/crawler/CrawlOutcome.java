@@ -0,0 +1,26 @@
+package crawler;
+
+/**
+ * Result of crawling one result page.
+ */
+public enum CrawlOutcome {
+    SUCCESS,
+    EMPTY,
+    TIMEOUT,
+    CAPTCHA,
+    ERROR;
+
+    /**
+     * Outcomes that mean the target is pushing back and we should slow down.
+     */
+    public boolean isBackoffSignal() {
+        return this == TIMEOUT || this == CAPTCHA;
+    }
+
+    /**
+     * Outcomes worth another attempt later.
+     */
+    public boolean isRetryable() {
+        return this == TIMEOUT || this == CAPTCHA || this == ERROR;
+    }
+}
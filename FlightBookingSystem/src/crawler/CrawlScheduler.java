@@ -0,0 +1,288 @@
+package crawler;
+
+import com.microsoft.playwright.Page;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Batch crawl scheduler.
+ * - Jobs wait in a priority queue (nearest departure first).
+ * - Each target host has a token bucket, so we never exceed its request rate.
+ * - Concurrency follows AIMD: +1/limit per successful page, halved on a
+ * timeout or captcha, between minConcurrency and maxConcurrency.
+ * - Retryable failures are re-queued with exponential backoff.
+ * Every dispatched job runs on its own virtual thread, so waiting on a page
+ * (navigation, selectors, scrolling all run on the pool's worker threads)
+ * parks nothing but a cheap virtual thread. Actual browser use is gated by a
+ * fair semaphore sized to the pool, so jobs beyond it queue on the semaphore
+ * instead of timing out on a pool lease.
+ * run() returns once every job has finished, so callers never need to guess
+ * a termination timeout.
+ */
+public class CrawlScheduler {
+
+    /**
+     * Crawls one job on a pooled page.
+     */
+    public interface CrawlHandler {
+        CrawlOutcome crawl(Page page, CrawlJob job) throws Exception;
+    }
+
+    /**
+     * Told about every finished attempt, outside the scheduler lock.
+     */
+    public interface CompletionListener {
+        void completed(CrawlJob job, CrawlOutcome outcome);
+    }
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 30000;
+    // Jobs pulled ahead from a lazy source per unit of max concurrency
+    private static final int SOURCE_LOOKAHEAD = 8;
+
+    private final BrowserPool pool;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final double hostRatePerSecond;
+    private final int hostBurst;
+    private final Semaphore pagePermits;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<CrawlJob> ready = new PriorityQueue<>();
+    private final PriorityQueue<CrawlJob> delayed = new PriorityQueue<>(
+            Comparator.comparingLong(CrawlJob::getNotBeforeMillis));
+    private final Map<String, TokenBucket> buckets = new HashMap<>();
+    private Iterator<CrawlJob> source;
+    private volatile CompletionListener completionListener;
+
+    private double concurrencyLimit;
+    private int inFlight;
+    private int succeeded;
+    private int failed;
+    private int retried;
+
+    /**
+     * @param pool              browser pool the pages come from
+     * @param minConcurrency    lower bound for the AIMD limit
+     * @param maxConcurrency    upper bound on jobs in flight; beyond the pool
+     *                          size they wait for a page permit
+     * @param hostRatePerSecond sustained requests per second per host
+     * @param hostBurst         token bucket capacity per host
+     */
+    public CrawlScheduler(BrowserPool pool, int minConcurrency, int maxConcurrency, double hostRatePerSecond,
+            int hostBurst) {
+        if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+            throw new IllegalArgumentException("Invalid concurrency bounds");
+        }
+        this.pool = pool;
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.hostRatePerSecond = hostRatePerSecond;
+        this.hostBurst = hostBurst;
+        this.pagePermits = new Semaphore(pool.size(), true);
+        this.concurrencyLimit = minConcurrency;
+    }
+
+    public void setCompletionListener(CompletionListener listener) {
+        this.completionListener = listener;
+    }
+
+    public void submit(CrawlJob job) {
+        lock.lock();
+        try {
+            enqueue(job, System.currentTimeMillis());
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void submitAll(Iterable<CrawlJob> jobs) {
+        for (CrawlJob job : jobs) {
+            submit(job);
+        }
+    }
+
+    /**
+     * Pull jobs from a lazy source as capacity frees up instead of queueing
+     * them all up front; only a small lookahead window is held in memory, and
+     * priority ordering applies within that window.
+     */
+    public void submitFrom(Iterator<CrawlJob> jobs) {
+        lock.lock();
+        try {
+            if (source != null && source.hasNext()) {
+                throw new IllegalStateException("A job source is already attached");
+            }
+            source = jobs;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Dispatch jobs until the queue is drained and nothing is in flight.
+     */
+    public void run(CrawlHandler handler) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        // close() waits for the dispatched jobs to finish
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            CrawlJob job;
+            while ((job = nextJob()) != null) {
+                CrawlJob dispatched = job;
+                workers.submit(() -> execute(handler, dispatched));
+            }
+        }
+
+        double minutes = Math.max(1, System.currentTimeMillis() - start) / 60000.0;
+        System.out.printf("Crawl finished: %d succeeded, %d failed, %d retries, %.1f pages/min%n",
+                succeeded, failed, retried, (succeeded + failed + retried) / minutes);
+    }
+
+    /**
+     * Block until a job may start: under the concurrency limit, its host has a
+     * token and any retry backoff has passed. Returns null when all work is done.
+     */
+    private CrawlJob nextJob() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                while (!delayed.isEmpty() && delayed.peek().getNotBeforeMillis() <= now) {
+                    ready.add(delayed.poll());
+                }
+                while (source != null && ready.size() < maxConcurrency * SOURCE_LOOKAHEAD && source.hasNext()) {
+                    enqueue(source.next(), now);
+                }
+
+                if (ready.isEmpty() && delayed.isEmpty() && inFlight == 0) {
+                    return null;
+                }
+
+                long waitMillis = delayed.isEmpty() ? Long.MAX_VALUE : delayed.peek().getNotBeforeMillis() - now;
+                if (!ready.isEmpty() && inFlight < (int) concurrencyLimit) {
+                    CrawlJob head = ready.peek();
+                    TokenBucket bucket = buckets.computeIfAbsent(head.getHost(),
+                            h -> new TokenBucket(hostRatePerSecond, hostBurst));
+                    long tokenWait = bucket.millisUntilToken(now);
+                    if (tokenWait == 0) {
+                        bucket.take();
+                        inFlight++;
+                        return ready.poll();
+                    }
+                    waitMillis = Math.min(waitMillis, tokenWait);
+                }
+
+                if (waitMillis == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.await(Math.max(1, waitMillis), TimeUnit.MILLISECONDS);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Jobs with a not-before time in the future (e.g. resumed retries) wait in the delayed queue
+    private void enqueue(CrawlJob job, long now) {
+        if (job.getNotBeforeMillis() > now) {
+            delayed.add(job);
+        } else {
+            ready.add(job);
+        }
+    }
+
+    private void execute(CrawlHandler handler, CrawlJob job) {
+        job.recordAttempt();
+        CrawlOutcome outcome;
+        try {
+            pagePermits.acquire();
+            try {
+                outcome = pool.execute(page -> handler.crawl(page, job));
+            } finally {
+                pagePermits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = CrawlOutcome.ERROR;
+        } catch (Exception e) {
+            System.err.println("Crawl of " + job + " failed: " + e.getMessage());
+            outcome = CrawlOutcome.ERROR;
+        }
+        complete(job, outcome);
+        CompletionListener listener = completionListener;
+        if (listener != null) {
+            listener.completed(job, outcome);
+        }
+    }
+
+    private void complete(CrawlJob job, CrawlOutcome outcome) {
+        lock.lock();
+        try {
+            inFlight--;
+
+            if (outcome.isBackoffSignal()) {
+                concurrencyLimit = Math.max(minConcurrency, concurrencyLimit / 2);
+                System.err.println(outcome + " on " + job + ", concurrency limit -> " + (int) concurrencyLimit);
+            } else if (outcome == CrawlOutcome.SUCCESS || outcome == CrawlOutcome.EMPTY) {
+                concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1.0 / concurrencyLimit);
+            }
+
+            if (outcome.isRetryable() && job.getAttempts() < MAX_ATTEMPTS) {
+                job.setNotBeforeMillis(System.currentTimeMillis()
+                        + RETRY_BACKOFF_MS * (1L << (job.getAttempts() - 1)));
+                delayed.add(job);
+                retried++;
+            } else if (outcome.isRetryable()) {
+                failed++;
+            } else {
+                succeeded++;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Classic token bucket; guarded by the scheduler lock.
+     */
+    private static class TokenBucket {
+        private final double tokensPerMilli;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double ratePerSecond, int burst) {
+            this.tokensPerMilli = ratePerSecond / 1000.0;
+            this.capacity = Math.max(1, burst);
+            this.tokens = this.capacity;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        long millisUntilToken(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+            lastRefill = now;
+            if (tokens >= 1) {
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerMilli);
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ctrip's result pages, through FlightCrawler's browser pool and search
+ * cache (so an aggregated search and an interactive one share crawls).
+ */
+public class CtripFareSource implements FareSource {
+
+    @Override
+    public String getName() {
+        return "ctrip";
+    }
+
+    @Override
+    public List<FlightData> search(String originCode, String destinationCode, String date) {
+        return priced(FlightCrawler.searchFlights(originCode, destinationCode, date));
+    }
+
+    /**
+     * The crawl itself stops by the deadline, so an aggregated search that
+     * gives up on it does not keep a browser worker busy.
+     */
+    @Override
+    public List<FlightData> search(String originCode, String destinationCode, String date, Deadline deadline) {
+        return priced(FlightCrawler.searchFlights(originCode, destinationCode, date, null, deadline));
+    }
+
+    private static List<FlightData> priced(List<FlightCrawler.FlightInfo> found) {
+        List<FlightData> flights = new ArrayList<>();
+        for (FlightCrawler.FlightInfo info : found) {
+            if (info.hasPrice()) {
+                flights.add(info.toFlightData());
+            }
+        }
+        return flights;
+    }
+}
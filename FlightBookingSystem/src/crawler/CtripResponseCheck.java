@@ -0,0 +1,88 @@
+package crawler;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Offline check of the network-capture path: serves the recorded
+ * sha-bjs-2026-11-01.json from CtripStandIn, requests the result page and
+ * the flight list over HTTP as the browser would, and checks what
+ * CtripResponseParser makes of the response. Exits with status 1 on a
+ * mismatch.
+ *
+ * Usage: CtripResponseCheck [fixturesDir]
+ */
+public class CtripResponseCheck {
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path fixtures = Paths.get(args.length > 0 ? args[0] : "src/crawler/fixtures");
+        HttpClient client = HttpClient.newHttpClient();
+        String json;
+        try (CtripStandIn standIn = new CtripStandIn(fixtures, 0)) {
+            String page = get(client, standIn.getBaseUrl() + "/online/list/oneway-sha-bjs?depdate=2026-11-01");
+            check("result page requests the flight list", page.contains(FlightCrawler.FLIGHT_LIST_API), true);
+            json = get(client, standIn.getBaseUrl() + FlightCrawler.FLIGHT_LIST_API
+                    + "?route=sha-bjs&date=2026-11-01");
+            String missing = get(client, standIn.getBaseUrl() + FlightCrawler.FLIGHT_LIST_API
+                    + "?route=sha-can&date=2026-11-01");
+            check("unrecorded route", CtripResponseParser.parse(missing, "SHA", "CAN", "2026-11-01").size(), 0);
+        }
+
+        List<FlightData> flights = CtripResponseParser.parse(json, "SHA", "BJS", "2026-11-01");
+        // CA1858 has no price and is dropped
+        check("itineraries", flights.size(), 3);
+        if (flights.size() == 3) {
+            FlightData direct = flights.get(0);
+            check("direct flight number", direct.getFlightNumber(), "MU5101");
+            check("direct airline", direct.getAirline(), "东方航空");
+            check("direct times", direct.getDepartureTime() + "-" + direct.getArrivalTime(), "07:00-09:15");
+            check("direct lowest adult price", direct.getPrice(), 680.0);
+            check("direct hasTransfer", direct.hasTransfer(), false);
+            check("direct transferCount", direct.getTransferCount(), 0);
+            check("direct route", direct.getOrigin() + "-" + direct.getDestination(), "SHA-BJS");
+
+            FlightData connecting = flights.get(1);
+            check("connecting flight numbers", connecting.getFlightNumber(), "MU5401/MU2101");
+            check("connecting times", connecting.getDepartureTime() + "-" + connecting.getArrivalTime(),
+                    "12:30-19:25");
+            check("connecting hasTransfer", connecting.hasTransfer(), true);
+            check("connecting transferCount", connecting.getTransferCount(), 1);
+            check("connecting route", connecting.getOrigin() + "-" + connecting.getDestination(), "SHA-BJS");
+
+            // No declared transferCount: derived from the number of legs
+            FlightData overnight = flights.get(2);
+            check("overnight flight number", overnight.getFlightNumber(), "HO1251");
+            check("overnight hasTransfer", overnight.hasTransfer(), false);
+            check("overnight arrival day offset", overnight.getArrivalDayOffset(), 1);
+            check("overnight date", overnight.getDate(), "2026-11-01");
+        }
+        check("not a flight list",
+                CtripResponseParser.parse("{\"data\":{}}", "SHA", "BJS", "2026-11-01").size(), 0);
+        check("not JSON", CtripResponseParser.parse("<html>", "SHA", "BJS", "2026-11-01").size(), 0);
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All Ctrip response checks passed.");
+    }
+
+    private static String get(HttpClient client, String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString())
+                .body();
+    }
+
+    private static void check(String what, Object actual, Object expected) {
+        if (!expected.equals(actual)) {
+            System.out.println("FAIL " + what + ": expected " + expected + ", got " + actual);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package crawler;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses Ctrip's flight-list search response (the XHR the result page loads
+ * its data from) into FlightData.
+ *
+ * Expected shape (only the fields used here):
+ * data.flightItineraryList[].flightSegments[].flightList[] (one entry per leg)
+ * data.flightItineraryList[].priceList[].adultPrice
+ */
+public class CtripResponseParser {
+
+    private CtripResponseParser() {
+    }
+
+    /**
+     * @param json            raw response body
+     * @param originCode      fallback origin if a leg carries no city code
+     * @param destinationCode fallback destination
+     * @param date            search date (yyyy-MM-dd)
+     * @return one FlightData per itinerary, empty if the payload is not a flight list
+     */
+    public static List<FlightData> parse(String json, String originCode, String destinationCode, String date) {
+        List<FlightData> flights = new ArrayList<>();
+        JsonObject root;
+        try {
+            JsonElement element = JsonParser.parseString(json);
+            if (!element.isJsonObject()) {
+                return flights;
+            }
+            root = element.getAsJsonObject();
+        } catch (JsonParseException e) {
+            System.err.println("Could not parse Ctrip response: " + e.getMessage());
+            return flights;
+        }
+
+        JsonObject data = object(root, "data");
+        JsonArray itineraries = array(data != null ? data : root, "flightItineraryList");
+        if (itineraries == null) {
+            return flights;
+        }
+
+        for (JsonElement itineraryElement : itineraries) {
+            if (!itineraryElement.isJsonObject()) {
+                continue;
+            }
+            FlightData flight = parseItinerary(itineraryElement.getAsJsonObject(), originCode, destinationCode,
+                    date);
+            if (flight != null) {
+                flights.add(flight);
+            }
+        }
+        return flights;
+    }
+
+    private static FlightData parseItinerary(JsonObject itinerary, String originCode, String destinationCode,
+            String date) {
+        List<JsonObject> legs = new ArrayList<>();
+        int declaredTransfers = -1;
+
+        JsonArray segments = array(itinerary, "flightSegments");
+        if (segments == null) {
+            return null;
+        }
+        for (JsonElement segmentElement : segments) {
+            if (!segmentElement.isJsonObject()) {
+                continue;
+            }
+            JsonObject segment = segmentElement.getAsJsonObject();
+            if (segment.has("transferCount")) {
+                declaredTransfers = Math.max(declaredTransfers, intValue(segment, "transferCount", 0));
+            }
+            JsonArray flightList = array(segment, "flightList");
+            if (flightList != null) {
+                for (JsonElement leg : flightList) {
+                    if (leg.isJsonObject()) {
+                        legs.add(leg.getAsJsonObject());
+                    }
+                }
+            }
+        }
+        if (legs.isEmpty()) {
+            return null;
+        }
+
+        double price = lowestAdultPrice(itinerary);
+        if (price <= 0) {
+            return null;
+        }
+
+        JsonObject first = legs.get(0);
+        JsonObject last = legs.get(legs.size() - 1);
+
+        StringBuilder flightNumbers = new StringBuilder();
+        for (JsonObject leg : legs) {
+            if (flightNumbers.length() > 0) {
+                flightNumbers.append('/');
+            }
+            flightNumbers.append(string(leg, "flightNo", "N/A"));
+        }
+
+        int transferCount = declaredTransfers >= 0 ? declaredTransfers : legs.size() - 1;
+
+        return new FlightData(
+                flightNumbers.toString(),
+                string(first, "marketAirlineName", string(first, "airlineName", "N/A")),
+                timeOfDay(string(first, "departureDateTime", "N/A")),
+                timeOfDay(string(last, "arrivalDateTime", "N/A")),
+                price,
+                string(first, "departureCityCode", originCode).toUpperCase(),
+                string(last, "arrivalCityCode", destinationCode).toUpperCase(),
+                transferCount > 0,
+                transferCount,
+                date,
+                dayOffset(string(first, "departureDateTime", ""), string(last, "arrivalDateTime", "")));
+    }
+
+    private static double lowestAdultPrice(JsonObject itinerary) {
+        JsonArray prices = array(itinerary, "priceList");
+        double lowest = -1;
+        if (prices == null) {
+            return lowest;
+        }
+        for (JsonElement priceElement : prices) {
+            if (!priceElement.isJsonObject()) {
+                continue;
+            }
+            JsonElement adultPrice = priceElement.getAsJsonObject().get("adultPrice");
+            if (adultPrice != null && adultPrice.isJsonPrimitive()) {
+                try {
+                    double value = adultPrice.getAsDouble();
+                    if (value > 0 && (lowest < 0 || value < lowest)) {
+                        lowest = value;
+                    }
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Days between the date parts of two "yyyy-MM-dd HH:mm:ss" values, e.g. 1
+     * for an arrival after midnight; 0 if either is missing or malformed.
+     */
+    private static int dayOffset(String departureDateTime, String arrivalDateTime) {
+        if (departureDateTime.length() < 10 || arrivalDateTime.length() < 10) {
+            return 0;
+        }
+        try {
+            return (int) (LocalDate.parse(arrivalDateTime.substring(0, 10)).toEpochDay()
+                    - LocalDate.parse(departureDateTime.substring(0, 10)).toEpochDay());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * "2025-12-03 07:05:00" -> "07:05", matching the time format shown on the page.
+     */
+    private static String timeOfDay(String dateTime) {
+        int space = dateTime.indexOf(' ');
+        if (space >= 0 && dateTime.length() >= space + 6) {
+            return dateTime.substring(space + 1, space + 6);
+        }
+        return dateTime;
+    }
+
+    private static JsonObject object(JsonObject parent, String key) {
+        JsonElement element = parent.get(key);
+        return element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+
+    private static JsonArray array(JsonObject parent, String key) {
+        JsonElement element = parent.get(key);
+        return element != null && element.isJsonArray() ? element.getAsJsonArray() : null;
+    }
+
+    private static String string(JsonObject parent, String key, String fallback) {
+        JsonElement element = parent.get(key);
+        if (element == null || !element.isJsonPrimitive()) {
+            return fallback;
+        }
+        String value = element.getAsString().trim();
+        return value.isEmpty() ? fallback : value;
+    }
+
+    private static int intValue(JsonObject parent, String key, int fallback) {
+        JsonElement element = parent.get(key);
+        try {
+            return element != null && element.isJsonPrimitive() ? element.getAsInt() : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package crawler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local HTTP stand-in for Ctrip that serves recorded flight-list responses
+ * (named as for FixtureFareSource), so the network-capture path can run
+ * offline. Point the crawler at it with -Dcrawler.ctrip.baseUrl=<baseUrl>.
+ *
+ * - /online/list/oneway-sha-bjs?depdate=2026-11-01 is a bare result page
+ * whose script requests the flight list, like the real one does;
+ * - FLIGHT_LIST_API?route=sha-bjs&date=2026-11-01 answers with the recorded
+ * response, or an empty flight list if there is none.
+ *
+ * Usage: CtripStandIn [fixturesDir] [port]
+ */
+public class CtripStandIn implements AutoCloseable {
+
+    private static final String LIST_PAGE_PREFIX = "/online/list/oneway-";
+    private static final String EMPTY_RESPONSE = "{\"status\":0,\"data\":{\"flightItineraryList\":[]}}";
+
+    private final Path fixtures;
+    private final HttpServer server;
+
+    /**
+     * @param port 0 for any free port
+     */
+    public CtripStandIn(Path fixtures, int port) throws IOException {
+        this.fixtures = fixtures;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext(LIST_PAGE_PREFIX, this::listPage);
+        server.createContext(FlightCrawler.FLIGHT_LIST_API, this::flightList);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void listPage(HttpExchange exchange) throws IOException {
+        String route = exchange.getRequestURI().getPath().substring(LIST_PAGE_PREFIX.length());
+        String date = query(exchange).getOrDefault("depdate", "");
+        String html = "<!DOCTYPE html><html><body><div id=\"list\"></div><script>"
+                + "fetch('" + FlightCrawler.FLIGHT_LIST_API + "?route=" + route + "&date=" + date
+                + "', {method: 'POST'});"
+                + "</script></body></html>";
+        send(exchange, "text/html; charset=utf-8", html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void flightList(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        String[] route = query.getOrDefault("route", "").split("-");
+        Path file = route.length == 2
+                ? FixtureFareSource.fixtureFile(fixtures, route[0], route[1], query.getOrDefault("date", ""))
+                : null;
+        byte[] body = file != null ? Files.readAllBytes(file) : EMPTY_RESPONSE.getBytes(StandardCharsets.UTF_8);
+        System.out.println("Stand-in: " + exchange.getRequestURI() + " -> "
+                + (file != null ? file.getFileName() : "no recording"));
+        send(exchange, "application/json; charset=utf-8", body);
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path fixtures = Paths.get(args.length > 0 ? args[0] : "src/crawler/fixtures");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8089;
+        CtripStandIn standIn = new CtripStandIn(fixtures, port);
+        System.out.println("Serving " + fixtures.toAbsolutePath() + " at " + standIn.getBaseUrl());
+        System.out.println("Run the crawler with -Dcrawler.ctrip.baseUrl=" + standIn.getBaseUrl());
+    }
+}
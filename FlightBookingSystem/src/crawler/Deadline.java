@@ -0,0 +1,46 @@
+package crawler;
+
+import java.time.Duration;
+
+/**
+ * Point in time by which a search must answer. Created once where the user
+ * starts the search and handed down through the crawler, so every wait
+ * along the way (worker lease, navigation, selector, scrolling) is capped
+ * by what is left of the same budget rather than by its own fixed timeout.
+ */
+public final class Deadline {
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * Milliseconds left, never negative.
+     */
+    public long remainingMillis() {
+        return Math.max(0, (expiresAtNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * A Playwright timeout: the usual one, or less if the deadline is nearer.
+     * Never 0, which Playwright would read as "no timeout".
+     */
+    public double timeout(double usualMillis) {
+        return Math.max(1, Math.min(usualMillis, remainingMillis()));
+    }
+
+    @Override
+    public String toString() {
+        return remainingMillis() + " ms left";
+    }
+}
@@ -0,0 +1,91 @@
+package crawler;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Console benchmark: bulk vs per-element flight box extraction.
+ * Saved Ctrip result pages (*.html) are served from a local HTTP server so
+ * the numbers measure extraction only, not the network.
+ *
+ * Usage: ExtractionBenchmark <dir-with-saved-pages> [iterations]
+ */
+public class ExtractionBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: ExtractionBenchmark <dir-with-saved-pages> [iterations]");
+            return;
+        }
+        Path pageDir = Paths.get(args[0]).toAbsolutePath().normalize();
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<Path> pages;
+        try (Stream<Path> files = Files.list(pageDir)) {
+            pages = files.filter(f -> f.toString().endsWith(".html")).sorted().collect(Collectors.toList());
+        }
+        if (pages.isEmpty()) {
+            System.out.println("No .html pages found in " + pageDir);
+            return;
+        }
+
+        HttpServer server = serve(pageDir);
+        int port = server.getAddress().getPort();
+
+        try (BrowserPool pool = new BrowserPool(1, 1, Integer.MAX_VALUE, true)) {
+            for (Path file : pages) {
+                String url = "http://127.0.0.1:" + port + "/" + file.getFileName();
+                String result = pool.execute(page -> {
+                    page.navigate(url);
+                    StringBuilder line = new StringBuilder(file.getFileName().toString());
+                    for (FlightCrawler.ExtractionMode mode : FlightCrawler.ExtractionMode.values()) {
+                        int flights = 0;
+                        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                            flights = FlightCrawler.extractAll(page, mode, "N/A", "N/A", "N/A").size();
+                        }
+                        long start = System.nanoTime();
+                        for (int i = 0; i < iterations; i++) {
+                            FlightCrawler.extractAll(page, mode, "N/A", "N/A", "N/A");
+                        }
+                        double avgMillis = (System.nanoTime() - start) / 1e6 / iterations;
+                        line.append(String.format(" | %s: %d flights, %.2f ms", mode, flights, avgMillis));
+                    }
+                    return line.toString();
+                });
+                System.out.println(result);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static HttpServer serve(Path pageDir) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            Path file = pageDir.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+            if (!file.startsWith(pageDir) || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = Files.readAllBytes(file);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,182 @@
+package crawler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans one search out to several fare sources at once and merges the
+ * answers. Every source runs on its own virtual thread; at the deadline the
+ * ones still running are interrupted and left out, so a slow source never
+ * delays the response. When sources report the same flight, the cheapest
+ * offer is kept (offers without a price are ignored), and the merged list is
+ * in FlightData order (direct first, then by price).
+ */
+public class FareAggregator {
+
+    private static final ExecutorService SOURCE_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final List<FareSource> sources;
+
+    public FareAggregator(List<FareSource> sources) {
+        this.sources = List.copyOf(sources);
+    }
+
+    /**
+     * Query every source for the route/date and wait at most the deadline.
+     *
+     * @param origin      city name or code, resolved with CityCodeMapper
+     * @param destination city name or code
+     */
+    public Result search(String origin, String destination, String date, Duration deadline)
+            throws InterruptedException {
+        long start = System.currentTimeMillis();
+        Deadline until = Deadline.after(deadline);
+        Result result = new Result();
+        String originCode = CityCodeMapper.getCityCode(origin);
+        String destinationCode = CityCodeMapper.getCityCode(destination);
+        if (originCode == null || destinationCode == null) {
+            System.err.println("Could not resolve  codes for: " + origin + " -> " + destination);
+            result.finish(start);
+            return result;
+        }
+
+        List<Callable<List<FlightData>>> tasks = new ArrayList<>(sources.size());
+        for (FareSource source : sources) {
+            tasks.add(() -> source.search(originCode, destinationCode, date, until));
+        }
+        // Returns by the deadline; sources still running are cancelled with an interrupt
+        List<Future<List<FlightData>>> futures = SOURCE_EXECUTOR.invokeAll(tasks, until.remainingMillis(),
+                TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < sources.size(); i++) {
+            FareSource source = sources.get(i);
+            Future<List<FlightData>> future = futures.get(i);
+            if (future.isCancelled()) {
+                System.err.println("Fare source " + source.getName() + " missed the " + deadline.toMillis()
+                        + " ms deadline.");
+                result.timedOut.add(source.getName());
+                continue;
+            }
+            try {
+                result.add(source.getName(), future.get());
+            } catch (ExecutionException e) {
+                System.err.println("Fare source " + source.getName() + " failed: " + e.getCause());
+                result.failed.put(source.getName(), String.valueOf(e.getCause()));
+            }
+        }
+        result.finish(start);
+        return result;
+    }
+
+    public List<FareSource> getSources() {
+        return sources;
+    }
+
+    /**
+     * Merged flights plus what each source contributed.
+     */
+    public static class Result {
+        private final Map<String, List<FlightData>> bySource = new LinkedHashMap<>();
+        private final List<String> timedOut = new ArrayList<>();
+        private final Map<String, String> failed = new LinkedHashMap<>();
+        // Cheapest offer per flight, and which source made it
+        private final Map<String, FlightData> cheapest = new HashMap<>();
+        private final Map<FlightData, String> sourceOf = new IdentityHashMap<>();
+        private final List<FlightData> flights = new ArrayList<>();
+        private int unidentified;
+        private long elapsedMillis;
+
+        private void add(String source, List<FlightData> found) {
+            List<FlightData> priced = new ArrayList<>();
+            if (found != null) {
+                for (FlightData flight : found) {
+                    // An unreadable price comes through as 0.0 and would beat every real offer
+                    if (flight != null && flight.getPrice() > 0) {
+                        priced.add(flight);
+                    }
+                }
+            }
+            bySource.put(source, Collections.unmodifiableList(priced));
+            for (FlightData flight : priced) {
+                String key = flight.getFlightNumber() + "|" + flight.getDate();
+                if ("N/A".equals(flight.getFlightNumber())) {
+                    // Not identifiable, so never merged with another offer
+                    key = "N/A|" + unidentified++;
+                }
+                FlightData current = cheapest.get(key);
+                if (current == null || flight.getPrice() < current.getPrice()) {
+                    if (current != null) {
+                        sourceOf.remove(current);
+                    }
+                    cheapest.put(key, flight);
+                    sourceOf.put(flight, source);
+                }
+            }
+        }
+
+        private void finish(long startMillis) {
+            flights.addAll(cheapest.values());
+            flights.sort(null);
+            elapsedMillis = System.currentTimeMillis() - startMillis;
+        }
+
+        /**
+         * Every distinct flight at its cheapest offer, in FlightData order.
+         */
+        public List<FlightData> getFlights() {
+            return Collections.unmodifiableList(flights);
+        }
+
+        /**
+         * Name of the source offering the flight in getFlights().
+         */
+        public String getSource(FlightData flight) {
+            return sourceOf.get(flight);
+        }
+
+        /**
+         * Every priced flight each source returned in time, in source order.
+         */
+        public Map<String, List<FlightData>> getFlightsBySource() {
+            return Collections.unmodifiableMap(bySource);
+        }
+
+        public List<String> getTimedOutSources() {
+            return Collections.unmodifiableList(timedOut);
+        }
+
+        public Map<String, String> getFailedSources() {
+            return Collections.unmodifiableMap(failed);
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(flights.size()).append(" flights in ").append(elapsedMillis).append(" ms");
+            bySource.forEach((source, found) -> text.append(", ").append(source).append(": ").append(found.size()));
+            if (!timedOut.isEmpty()) {
+                text.append(", timed out: ").append(String.join(", ", timedOut));
+            }
+            if (!failed.isEmpty()) {
+                text.append(", failed: ").append(String.join(", ", failed.keySet()));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package crawler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Offline check of FlightCrawler.compareFares with the recorded
+ * sha-bjs-2026-11-01.json in place of Ctrip: a fast fixture source, a
+ * source undercutting one of its fares (and reporting unpriced ones), a
+ * source too slow for the deadline and a failing one. The merge must keep
+ * the cheapest priced offer per flight, and the result must come back at
+ * the deadline with the slow source timed out. Exits with status 1 on a
+ * mismatch.
+ *
+ * Usage: FareAggregatorCheck [fixturesDir]
+ */
+public class FareAggregatorCheck {
+
+    private static final String DATE = "2026-11-01";
+    private static final Duration DEADLINE = Duration.ofMillis(500);
+    // Scheduling slack allowed past the deadline
+    private static final long MAX_OVERRUN_MS = 300;
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path fixtures = Paths.get(args.length > 0 ? args[0] : "src/crawler/fixtures");
+        long[] remaining = { -1 };
+        FareSource discount = new FareSource() {
+            @Override
+            public String getName() {
+                return "discount";
+            }
+
+            @Override
+            public List<FlightData> search(String originCode, String destinationCode, String date) {
+                List<FlightData> flights = new ArrayList<>();
+                flights.add(fare("MU5101", 600));
+                // Prices that did not parse
+                flights.add(fare("HO1251", 0));
+                flights.add(fare("9C8888", 0));
+                return flights;
+            }
+
+            @Override
+            public List<FlightData> search(String originCode, String destinationCode, String date,
+                    Deadline deadline) {
+                remaining[0] = deadline.remainingMillis();
+                return search(originCode, destinationCode, date);
+            }
+        };
+        FareSource broken = new FareSource() {
+            @Override
+            public String getName() {
+                return "broken";
+            }
+
+            @Override
+            public List<FlightData> search(String originCode, String destinationCode, String date)
+                    throws IOException {
+                throw new IOException("connection refused");
+            }
+        };
+        FixtureFareSource fixture = new FixtureFareSource(fixtures);
+        double recordedPrice = priceOf(fixture.search("sha", "bjs", DATE), "HO1251");
+
+        // Only the offline sources, for the length of the check
+        List<FareSource> registered = new ArrayList<>(FlightCrawler.getFareSources());
+        registered.forEach(FlightCrawler::removeFareSource);
+        FlightCrawler.addFareSource(fixture);
+        FlightCrawler.addFareSource(discount);
+        FlightCrawler.addFareSource(new FixtureFareSource(fixtures, "slow", Duration.ofSeconds(5)));
+        FlightCrawler.addFareSource(broken);
+        FareAggregator.Result result;
+        try {
+            result = FlightCrawler.compareFares("SHA", "BJS", DATE, DEADLINE);
+        } finally {
+            new ArrayList<>(FlightCrawler.getFareSources()).forEach(FlightCrawler::removeFareSource);
+            registered.forEach(FlightCrawler::addFareSource);
+        }
+
+        check("answered at the deadline", result.getElapsedMillis() >= DEADLINE.toMillis()
+                && result.getElapsedMillis() <= DEADLINE.toMillis() + MAX_OVERRUN_MS, true);
+        check("deadline handed to sources", remaining[0] >= 0 && remaining[0] <= DEADLINE.toMillis(), true);
+        check("timed out", result.getTimedOutSources(), List.of("slow"));
+        check("failed", new ArrayList<>(result.getFailedSources().keySet()), List.of("broken"));
+        check("fixture flights", result.getFlightsBySource().get("fixture").size(), 3);
+        check("priced discount offers", result.getFlightsBySource().get("discount").size(), 1);
+
+        List<FlightData> flights = result.getFlights();
+        check("merged flights", flights.size(), 3);
+        check("cheapest MU5101", priceOf(flights, "MU5101"), 600.0);
+        check("MU5101 source", result.getSource(find(flights, "MU5101")), "discount");
+        check("unpriced offer ignored", priceOf(flights, "HO1251"), recordedPrice);
+        check("HO1251 source", result.getSource(find(flights, "HO1251")), "fixture");
+        check("unpriced flight left out", find(flights, "9C8888"), null);
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All fare aggregator checks passed (" + result + ").");
+    }
+
+    private static FlightData fare(String flightNumber, double price) {
+        return new FlightData(flightNumber, "N/A", "08:00", "10:00", price, "SHA", "BJS", false, 0, DATE, 0);
+    }
+
+    private static FlightData find(List<FlightData> flights, String flightNumber) {
+        for (FlightData flight : flights) {
+            if (flight.getFlightNumber().equals(flightNumber)) {
+                return flight;
+            }
+        }
+        return null;
+    }
+
+    private static double priceOf(List<FlightData> flights, String flightNumber) {
+        FlightData flight = find(flights, flightNumber);
+        return flight == null ? -1 : flight.getPrice();
+    }
+
+    private static void check(String what, Object actual, Object expected) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            System.out.println("FAIL " + what + ": expected " + expected + ", got " + actual);
+            failures++;
+        }
+    }
+}
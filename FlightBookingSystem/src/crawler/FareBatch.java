@@ -0,0 +1,405 @@
+package crawler;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar, primitive-backed set of fares.
+ *
+ * One array per field instead of one object per fare:
+ * price as long fen, departure/arrival as minute-of-day shorts plus an arrival
+ * day offset, city codes packed into ints, airlines dictionary-encoded and
+ * simple flight numbers (two-character carrier + digits) packed into ints.
+ * A row costs about 34 bytes, against several hundred for a FlightData or
+ * FlightInfo with its strings.
+ *
+ * Sorts and filters return row-index arrays and never allocate per row.
+ */
+public class FareBatch {
+
+    /**
+     * Sort orders over the primitive columns.
+     */
+    public enum SortKey {
+        PRICE, DEPARTURE, ARRIVAL, DURATION
+    }
+
+    /**
+     * Row predicate evaluated against the columns directly.
+     */
+    public interface RowFilter {
+        boolean test(FareBatch batch, int row);
+    }
+
+    private static final int UNKNOWN_CODE = -1;
+    private static final int MINUTES_PER_DAY = 1440;
+    private static final int[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000 };
+    // Room for the number plus its 10^digits marker: at most 199999
+    private static final int FLIGHT_NUMBER_RANGE = 1000000;
+
+    private int size;
+    private long[] priceFen;
+    private short[] departureMinute;
+    private short[] arrivalMinute;
+    private byte[] arrivalDayOffset;
+    private byte[] transferCount;
+    private int[] origin;
+    private int[] destination;
+    private int[] epochDay;
+    private int[] airlineId;
+    private int[] flightNumber;
+
+    // Dictionary for airline names
+    private final List<String> airlines = new ArrayList<>();
+    private final Map<String, Integer> airlineIds = new HashMap<>();
+    // Flight numbers that do not pack (e.g. "MU5101/MU2203" for transfers)
+    private final Map<Integer, String> unpackedFlightNumbers = new HashMap<>();
+
+    public FareBatch() {
+        this(64);
+    }
+
+    public FareBatch(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        priceFen = new long[capacity];
+        departureMinute = new short[capacity];
+        arrivalMinute = new short[capacity];
+        arrivalDayOffset = new byte[capacity];
+        transferCount = new byte[capacity];
+        origin = new int[capacity];
+        destination = new int[capacity];
+        epochDay = new int[capacity];
+        airlineId = new int[capacity];
+        flightNumber = new int[capacity];
+    }
+
+    public static FareBatch from(List<FlightData> flights) {
+        FareBatch batch = new FareBatch(flights.size());
+        for (FlightData flight : flights) {
+            batch.add(flight);
+        }
+        return batch;
+    }
+
+    /**
+     * Append a fare and return its row index.
+     */
+    public int add(FlightData flight) {
+        return add(Math.round(flight.getPrice() * 100), FareTextParser.parseMinuteOfDay(flight.getDepartureTime()),
+                FareTextParser.parseMinuteOfDay(flight.getArrivalTime()), flight.getArrivalDayOffset(),
+                flight.getTransferCount(), flight.getOrigin(),
+                flight.getDestination(), flight.getDate(), flight.getAirline(), flight.getFlightNumber());
+    }
+
+    /**
+     * Append a fare from already parsed primitives and return its row index.
+     */
+    public int add(long priceFen, int departureMinute, int arrivalMinute, int arrivalDayOffset, int transfers,
+            String originCode, String destinationCode, String date, String airline, String flightNo) {
+        return add(priceFen, departureMinute, arrivalMinute, arrivalDayOffset, transfers,
+                AirportCode.pack(originCode), AirportCode.pack(destinationCode), epochDay(date), airline, flightNo);
+    }
+
+    /**
+     * Append a fare whose codes are already packed and whose date is an epoch
+     * day (-1 if unknown), as read back from the fare store.
+     */
+    public int add(long priceFen, int departureMinute, int arrivalMinute, int arrivalDayOffset, int transfers,
+            int originCode, int destinationCode, int epochDay, String airline, String flightNo) {
+        ensureCapacity(size + 1);
+        int row = size++;
+        this.priceFen[row] = priceFen;
+        this.departureMinute[row] = (short) departureMinute;
+        this.arrivalMinute[row] = (short) arrivalMinute;
+        this.arrivalDayOffset[row] = (byte) arrivalDayOffset;
+        this.transferCount[row] = (byte) Math.min(transfers, 127);
+        this.origin[row] = originCode;
+        this.destination[row] = destinationCode;
+        this.epochDay[row] = epochDay;
+        this.airlineId[row] = airlineIds.computeIfAbsent(airline == null ? "N/A" : airline, name -> {
+            airlines.add(name);
+            return airlines.size() - 1;
+        });
+        int packedFlight = packFlightNumber(flightNo);
+        this.flightNumber[row] = packedFlight;
+        if (packedFlight == UNKNOWN_CODE) {
+            unpackedFlightNumbers.put(row, flightNo == null ? "N/A" : flightNo);
+        }
+        return row;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // --- Column accessors ---
+
+    /**
+     * Price in fen, or -1 for a row without a price.
+     */
+    public long priceFen(int row) {
+        return priceFen[row];
+    }
+
+    public int departureMinute(int row) {
+        return departureMinute[row];
+    }
+
+    public int arrivalMinute(int row) {
+        return arrivalMinute[row];
+    }
+
+    public int arrivalDayOffset(int row) {
+        return arrivalDayOffset[row];
+    }
+
+    public int transferCount(int row) {
+        return transferCount[row];
+    }
+
+    /**
+     * Minutes from departure to arrival, or -1 if either time is unknown.
+     */
+    public int durationMinutes(int row) {
+        if (departureMinute[row] < 0 || arrivalMinute[row] < 0) {
+            return -1;
+        }
+        return arrivalMinute[row] + arrivalDayOffset[row] * MINUTES_PER_DAY - departureMinute[row];
+    }
+
+    public int airlineId(int row) {
+        return airlineId[row];
+    }
+
+    /**
+     * Dictionary id of an airline, or -1 if no row uses it.
+     */
+    public int airlineIdOf(String airline) {
+        Integer id = airlineIds.get(airline);
+        return id == null ? -1 : id;
+    }
+
+    public String airline(int row) {
+        return airlines.get(airlineId[row]);
+    }
+
+    public String flightNumber(int row) {
+        int packed = flightNumber[row];
+        return packed == UNKNOWN_CODE ? unpackedFlightNumbers.get(row) : unpackFlightNumber(packed);
+    }
+
+    /**
+     * Whether the row is one flight with a regular number like "MU5101", as
+     * opposed to an unknown number or joined legs like "MU5101/MU2203".
+     */
+    public boolean isSingleFlight(int row) {
+        return flightNumber[row] != UNKNOWN_CODE;
+    }
+
+    public int originCode(int row) {
+        return origin[row];
+    }
+
+    public int destinationCode(int row) {
+        return destination[row];
+    }
+
+    public String origin(int row) {
+        return AirportCode.toUpperCase(origin[row]);
+    }
+
+    public String destination(int row) {
+        return AirportCode.toUpperCase(destination[row]);
+    }
+
+    /**
+     * Departure date as an epoch day, or -1 if unknown.
+     */
+    public int epochDay(int row) {
+        return epochDay[row];
+    }
+
+    public String date(int row) {
+        return epochDay[row] < 0 ? "N/A" : LocalDate.ofEpochDay(epochDay[row]).toString();
+    }
+
+    /**
+     * Materialize a single row (for display or booking only).
+     */
+    public FlightData toFlightData(int row) {
+        return new FlightData(flightNumber(row), airline(row), FareTextParser.formatMinute(departureMinute[row]),
+                FareTextParser.formatMinute(arrivalMinute[row]), priceFen[row] / 100.0, origin(row), destination(row),
+                transferCount[row] > 0, transferCount[row], date(row), arrivalDayOffset[row]);
+    }
+
+    // --- Sorting and filtering ---
+
+    /**
+     * Row indices of the whole batch ordered by the key (ascending, stable).
+     * Rows with an unknown key sort last.
+     */
+    public int[] sort(SortKey key) {
+        return sort(key, allRows());
+    }
+
+    /**
+     * Order a selection of rows. Each row's key and index are packed into one
+     * long and sorted as primitives, so no per-row objects are created.
+     */
+    public int[] sort(SortKey key, int[] rows) {
+        long[] packed = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            long value = keyOf(key, rows[i]);
+            if (value < 0) {
+                value = Integer.MAX_VALUE;
+            }
+            packed[i] = (Math.min(value, Integer.MAX_VALUE) << 32) | (rows[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < packed.length; i++) {
+            sorted[i] = (int) packed[i];
+        }
+        return sorted;
+    }
+
+    private long keyOf(SortKey key, int row) {
+        switch (key) {
+            case PRICE:
+                return priceFen[row];
+            case DEPARTURE:
+                return departureMinute[row];
+            case ARRIVAL:
+                return arrivalMinute[row] < 0 ? -1 : arrivalMinute[row] + arrivalDayOffset[row] * MINUTES_PER_DAY;
+            case DURATION:
+                return durationMinutes(row);
+            default:
+                throw new IllegalArgumentException("Unknown sort key " + key);
+        }
+    }
+
+    /**
+     * Rows matching the filter, in row order.
+     */
+    public int[] filter(RowFilter filter) {
+        return filter(filter, allRows());
+    }
+
+    public int[] filter(RowFilter filter, int[] rows) {
+        int[] selected = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            if (filter.test(this, row)) {
+                selected[count++] = row;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Common quick filter: price cap (fen, 0 = none; rows without a price
+     * never pass a cap), departure window (minutes of day, inclusive) and
+     * direct flights only.
+     */
+    public int[] select(long maxPriceFen, int earliestDeparture, int latestDeparture, boolean directOnly) {
+        return select(maxPriceFen, earliestDeparture, latestDeparture, directOnly, allRows());
+    }
+
+    /**
+     * The same quick filter over a selection of rows (e.g. just appended ones).
+     */
+    public int[] select(long maxPriceFen, int earliestDeparture, int latestDeparture, boolean directOnly,
+            int[] rows) {
+        return filter((batch, row) -> (maxPriceFen <= 0
+                || (batch.priceFen[row] >= 0 && batch.priceFen[row] <= maxPriceFen))
+                && batch.departureMinute[row] >= earliestDeparture
+                && batch.departureMinute[row] <= latestDeparture
+                && (!directOnly || batch.transferCount[row] == 0), rows);
+    }
+
+    public int[] allRows() {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    /**
+     * Approximate heap used by the columns (excluding the dictionaries).
+     */
+    public long columnBytes() {
+        long perRow = 8 + 2 + 2 + 1 + 1 + 4 + 4 + 4 + 4 + 4;
+        return perRow * priceFen.length;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= priceFen.length) {
+            return;
+        }
+        int capacity = Math.max(needed, priceFen.length * 2);
+        priceFen = Arrays.copyOf(priceFen, capacity);
+        departureMinute = Arrays.copyOf(departureMinute, capacity);
+        arrivalMinute = Arrays.copyOf(arrivalMinute, capacity);
+        arrivalDayOffset = Arrays.copyOf(arrivalDayOffset, capacity);
+        transferCount = Arrays.copyOf(transferCount, capacity);
+        origin = Arrays.copyOf(origin, capacity);
+        destination = Arrays.copyOf(destination, capacity);
+        epochDay = Arrays.copyOf(epochDay, capacity);
+        airlineId = Arrays.copyOf(airlineId, capacity);
+        flightNumber = Arrays.copyOf(flightNumber, capacity);
+    }
+
+    // --- Encodings ---
+
+    /**
+     * "MU5101" -> carrier (2 alphanumerics, base 36) * 1000000 + number
+     * (1-5 digits, stored as number + 10^digits to keep leading zeros).
+     * The largest value, carrier "ZZ" with 5 digits, stays below 2^31.
+     */
+    private static int packFlightNumber(String flightNo) {
+        if (flightNo == null || flightNo.length() < 3 || flightNo.length() > 7) {
+            return UNKNOWN_CODE;
+        }
+        int carrier = 0;
+        for (int i = 0; i < 2; i++) {
+            int c = Character.digit(flightNo.charAt(i), 36);
+            if (c < 0 || Character.isLowerCase(flightNo.charAt(i))) {
+                return UNKNOWN_CODE;
+            }
+            carrier = carrier * 36 + c;
+        }
+        int digits = flightNo.length() - 2;
+        if (digits > 5) {
+            return UNKNOWN_CODE;
+        }
+        int number = 0;
+        for (int i = 2; i < flightNo.length(); i++) {
+            char ch = flightNo.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return UNKNOWN_CODE;
+            }
+            number = number * 10 + (ch - '0');
+        }
+        return carrier * FLIGHT_NUMBER_RANGE + number + POWERS_OF_TEN[digits];
+    }
+
+    private static String unpackFlightNumber(int packed) {
+        int carrier = packed / FLIGHT_NUMBER_RANGE;
+        String number = Integer.toString(packed % FLIGHT_NUMBER_RANGE).substring(1);
+        return Character.toUpperCase(Character.forDigit(carrier / 36, 36)) + ""
+                + Character.toUpperCase(Character.forDigit(carrier % 36, 36)) + number;
+    }
+
+    private static int epochDay(String date) {
+        try {
+            return (int) LocalDate.parse(date).toEpochDay();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package crawler;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cheapest fare per departure day for a flexible-date search (center date
+ * +/- N days). Days are filled in as their searches complete, in whatever
+ * order that happens; the listener hears about each one (on the searching
+ * thread). Thread safe.
+ */
+public class FareCalendar {
+
+    /**
+     * Told when a day's search completes, and again if its fares are refreshed.
+     */
+    public interface Listener {
+        void dayCompleted(String date, List<FlightCrawler.FlightInfo> flights, FlightCrawler.FlightInfo cheapest);
+    }
+
+    private final LocalDate center;
+    private final List<String> dates = new ArrayList<>();
+    private final Map<String, List<FlightCrawler.FlightInfo>> results = new ConcurrentHashMap<>();
+    private final Map<String, FlightCrawler.FlightInfo> cheapest = new ConcurrentHashMap<>();
+    private final Listener listener;
+    private volatile boolean cancelled;
+
+    /**
+     * Days from center - radiusDays to center + radiusDays; days already in
+     * the past are left out.
+     */
+    public FareCalendar(LocalDate center, int radiusDays, Listener listener) {
+        this.center = center;
+        this.listener = listener;
+        LocalDate today = LocalDate.now();
+        for (int offset = -radiusDays; offset <= radiusDays; offset++) {
+            LocalDate day = center.plusDays(offset);
+            if (!day.isBefore(today)) {
+                dates.add(day.toString());
+            }
+        }
+    }
+
+    /**
+     * Calendar days in date order.
+     */
+    public List<String> getDates() {
+        return Collections.unmodifiableList(dates);
+    }
+
+    /**
+     * Days nearest the requested date first: the order to search them in.
+     */
+    List<String> searchOrder() {
+        List<String> order = new ArrayList<>(dates);
+        order.sort(Comparator.comparingLong(
+                date -> Math.abs(LocalDate.parse(date).toEpochDay() - center.toEpochDay())));
+        return order;
+    }
+
+    void complete(String date, List<FlightCrawler.FlightInfo> flights) {
+        List<FlightCrawler.FlightInfo> copy = List.copyOf(flights);
+        FlightCrawler.FlightInfo best = null;
+        long bestFen = Long.MAX_VALUE;
+        for (FlightCrawler.FlightInfo flight : copy) {
+            long fen = FareTextParser.parsePriceFen(flight.getPrice());
+            if (fen > 0 && fen < bestFen) {
+                bestFen = fen;
+                best = flight;
+            }
+        }
+        results.put(date, copy);
+        if (best != null) {
+            cheapest.put(date, best);
+        } else {
+            cheapest.remove(date);
+        }
+        if (listener != null) {
+            listener.dayCompleted(date, copy, best);
+        }
+    }
+
+    public boolean isComplete(String date) {
+        return results.containsKey(date);
+    }
+
+    public boolean isFinished() {
+        return results.size() == dates.size();
+    }
+
+    /**
+     * Flights found for the day; empty if none or not searched yet.
+     */
+    public List<FlightCrawler.FlightInfo> getFlights(String date) {
+        return results.getOrDefault(date, Collections.emptyList());
+    }
+
+    /**
+     * Cheapest flight of the day, or null.
+     */
+    public FlightCrawler.FlightInfo getCheapest(String date) {
+        return cheapest.get(date);
+    }
+
+    /**
+     * Day with the lowest fare among completed days, or null.
+     */
+    public String getCheapestDate() {
+        String bestDate = null;
+        long bestFen = Long.MAX_VALUE;
+        for (String date : dates) {
+            FlightCrawler.FlightInfo flight = cheapest.get(date);
+            long fen = flight == null ? -1 : FareTextParser.parsePriceFen(flight.getPrice());
+            if (fen > 0 && fen < bestFen) {
+                bestFen = fen;
+                bestDate = date;
+            }
+        }
+        return bestDate;
+    }
+
+    /**
+     * Stop starting new day searches; ones already running still finish.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,37 @@
+package crawler;
+
+import java.util.List;
+
+/**
+ * A place fares can be looked up, e.g. Ctrip's result pages or recorded
+ * responses on disk. FareAggregator queries every registered source in
+ * parallel and merges what comes back in time.
+ */
+public interface FareSource {
+
+    /**
+     * Short name shown next to its results, e.g. "ctrip".
+     */
+    String getName();
+
+    /**
+     * Flights for one route/date. Runs on its own thread and may block; it is
+     * interrupted when the aggregator's deadline passes, and whatever it
+     * returns after that is ignored.
+     *
+     * @param originCode      city code as CityCodeMapper resolves it, e.g. "sha"
+     * @param destinationCode city code
+     * @param date            yyyy-MM-dd
+     */
+    List<FlightData> search(String originCode, String destinationCode, String date) throws Exception;
+
+    /**
+     * As above, answering by the aggregator's deadline. A source that holds
+     * shared resources while it works (e.g. a browser worker) should override
+     * this and stop by then; being interrupted alone may not free them.
+     */
+    default List<FlightData> search(String originCode, String destinationCode, String date, Deadline deadline)
+            throws Exception {
+        return search(originCode, destinationCode, date);
+    }
+}
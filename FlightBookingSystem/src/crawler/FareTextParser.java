@@ -0,0 +1,212 @@
+package crawler;
+
+/**
+ * Index-based parsing of the text fields shown on Ctrip result pages.
+ * Everything scans the CharSequence in place and returns primitives, so no
+ * regex is compiled and no cleaned copy of the input is built:
+ * - prices like "¥1,234起" to fen (123400)
+ * - times like "23:40\n+1天" to minute of day (1420) and day offset (1)
+ * - "中国联合航空KN5988?波音737(中)" to the boundaries of airline, flight
+ * number and aircraft type
+ * Invalid input yields -1 rather than an exception.
+ */
+public final class FareTextParser {
+
+    private FareTextParser() {
+    }
+
+    /**
+     * First number in the text, in fen (hundredths). Grouping commas are
+     * skipped and fraction digits past the second are ignored. -1 if there
+     * is no number.
+     */
+    public static long parsePriceFen(CharSequence text) {
+        if (text == null) {
+            return -1;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length && !isDigit(text.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return -1;
+        }
+
+        long yuan = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (isDigit(c)) {
+                yuan = yuan * 10 + (c - '0');
+            } else if (c == ',' && i + 1 < length && isDigit(text.charAt(i + 1))) {
+                continue;
+            } else {
+                break;
+            }
+        }
+
+        long fen = yuan * 100;
+        if (i + 1 < length && text.charAt(i) == '.' && isDigit(text.charAt(i + 1))) {
+            fen += (text.charAt(i + 1) - '0') * 10;
+            if (i + 2 < length && isDigit(text.charAt(i + 2))) {
+                fen += text.charAt(i + 2) - '0';
+            }
+        }
+        return fen;
+    }
+
+    /**
+     * Seconds since midnight for "H:MM", "HH:MM" or "HH:MM:SS", ignoring
+     * surrounding whitespace and a trailing day suffix such as "+1天".
+     * -1 if the text is not a valid time.
+     */
+    public static int parseSecondOfDay(CharSequence text) {
+        if (text == null) {
+            return -1;
+        }
+        int length = text.length();
+        int i = skipWhitespace(text, 0);
+
+        int hours = 0;
+        int hourDigits = 0;
+        while (i < length && hourDigits < 2 && isDigit(text.charAt(i))) {
+            hours = hours * 10 + (text.charAt(i++) - '0');
+            hourDigits++;
+        }
+        if (hourDigits == 0 || i + 2 >= length || text.charAt(i) != ':'
+                || !isDigit(text.charAt(i + 1)) || !isDigit(text.charAt(i + 2))) {
+            return -1;
+        }
+        int minutes = (text.charAt(i + 1) - '0') * 10 + (text.charAt(i + 2) - '0');
+        i += 3;
+
+        int seconds = 0;
+        if (i < length && text.charAt(i) == ':') {
+            if (i + 2 >= length || !isDigit(text.charAt(i + 1)) || !isDigit(text.charAt(i + 2))) {
+                return -1;
+            }
+            seconds = (text.charAt(i + 1) - '0') * 10 + (text.charAt(i + 2) - '0');
+            i += 3;
+        }
+
+        // Only whitespace or a day suffix may follow
+        if (i < length) {
+            char next = text.charAt(i);
+            if (!Character.isWhitespace(next) && next != '+' && next != '-') {
+                return -1;
+            }
+        }
+        if (hours > 23 || minutes > 59 || seconds > 59) {
+            return -1;
+        }
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    /**
+     * Minute of day (0-1439), or -1; see parseSecondOfDay.
+     */
+    public static int parseMinuteOfDay(CharSequence text) {
+        int seconds = parseSecondOfDay(text);
+        return seconds < 0 ? -1 : seconds / 60;
+    }
+
+    /**
+     * Day offset from a suffix like "+1天" after the time; 0 when there is none.
+     */
+    public static int parseDayOffset(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int length = text.length();
+        for (int i = 0; i + 1 < length; i++) {
+            char sign = text.charAt(i);
+            if ((sign == '+' || sign == '-') && isDigit(text.charAt(i + 1))) {
+                int days = 0;
+                for (int j = i + 1; j < length && isDigit(text.charAt(j)); j++) {
+                    days = days * 10 + (text.charAt(j) - '0');
+                }
+                return sign == '-' ? -days : days;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Locate the flight number in "airline + flight number + '?' + aircraft".
+     * The flight number is the letter/digit run ending at the first '?' that
+     * has one in front of it. Returns -1 if there is none, otherwise the
+     * packed boundaries; read them with flightNumberStart/flightNumberEnd.
+     */
+    public static long splitAirlineInfo(CharSequence text) {
+        if (text == null) {
+            return -1;
+        }
+        int length = text.length();
+        for (int mark = 1; mark < length; mark++) {
+            if (text.charAt(mark) != '?' || !isAlphanumeric(text.charAt(mark - 1))) {
+                continue;
+            }
+            int start = mark - 1;
+            while (start > 0 && isAlphanumeric(text.charAt(start - 1))) {
+                start--;
+            }
+            return ((long) start << 32) | mark;
+        }
+        return -1;
+    }
+
+    /**
+     * Index of the first flight number character; the airline name precedes it.
+     */
+    public static int flightNumberStart(long split) {
+        return (int) (split >>> 32);
+    }
+
+    /**
+     * Index of the '?' after the flight number; the aircraft type follows it.
+     */
+    public static int flightNumberEnd(long split) {
+        return (int) split;
+    }
+
+    /**
+     * "HH:MM" for a minute of day, "N/A" for -1.
+     */
+    public static String formatMinute(int minute) {
+        if (minute < 0) {
+            return "N/A";
+        }
+        char[] text = { (char) ('0' + minute / 600), (char) ('0' + minute / 60 % 10), ':',
+                (char) ('0' + minute % 60 / 10), (char) ('0' + minute % 10) };
+        return new String(text);
+    }
+
+    /**
+     * Price text without trailing zero fraction: 123400 -> "1234", 123450 -> "1234.50".
+     */
+    public static String formatPriceFen(long fen) {
+        if (fen < 0) {
+            return "N/A";
+        }
+        long fraction = fen % 100;
+        if (fraction == 0) {
+            return Long.toString(fen / 100);
+        }
+        return fen / 100 + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    private static int skipWhitespace(CharSequence text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return isDigit(c) || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+}
@@ -0,0 +1,95 @@
+package crawler;
+
+import java.lang.management.ManagementFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Console benchmark: FareTextParser vs the regex cleaning it replaced
+ * (replaceAll on every price and arrival time, AIRLINE_INFO_PATTERN for the
+ * airline line, Double.parseDouble on the cleaned price).
+ * Reports ns and bytes allocated per flight box for each path.
+ *
+ * Usage: FareTextParserBenchmark [iterations]
+ */
+public class FareTextParserBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final String[][] SAMPLES = {
+            { "中国联合航空KN5988?波音737(中)", "¥1234起", "23:40\n+1天" },
+            { "东方航空MU5101?空客330(宽)", "¥2,080起", "09:15" },
+            { "四川航空3U8886?空客321(中)", "¥689起", "01:05\n+1天" },
+            { "海南航空HU7606?波音787(宽)", "¥1560.50", "18:30" },
+    };
+
+    // The previous FlightCrawler/PassengerInfoView path, kept here as the baseline
+    private static final Pattern AIRLINE_INFO_PATTERN = Pattern.compile("^(.*?)([A-Za-z0-9]+)\\?(.*)$");
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runRegex(iterations / 10);
+            runParser(iterations / 10);
+        }
+        report("regex ", iterations, true);
+        report("parser", iterations, false);
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static void report(String label, int iterations, boolean regex) {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        if (regex) {
+            runRegex(iterations);
+        } else {
+            runParser(iterations);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.printf("%s: %7.1f ns/flight, %7.1f bytes/flight%n", label, (double) elapsed / iterations,
+                allocatedBefore < 0 ? Double.NaN : (double) allocated / iterations);
+    }
+
+    private static void runRegex(int iterations) {
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            String[] sample = SAMPLES[i & (SAMPLES.length - 1)];
+            Matcher matcher = AIRLINE_INFO_PATTERN.matcher(sample[0]);
+            if (matcher.find()) {
+                total += matcher.group(1).trim().length() + matcher.group(2).trim().length()
+                        + matcher.group(3).trim().length();
+            }
+            String price = sample[1].replaceAll("[^0-9.]", "");
+            total += (long) (Double.parseDouble(price) * 100);
+            String arrival = sample[2].replaceAll("\\s*\\+\\d+天", "").trim();
+            total += arrival.length();
+        }
+        sink += total;
+    }
+
+    private static void runParser(int iterations) {
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            String[] sample = SAMPLES[i & (SAMPLES.length - 1)];
+            long split = FareTextParser.splitAirlineInfo(sample[0]);
+            if (split >= 0) {
+                total += FareTextParser.flightNumberStart(split) + FareTextParser.flightNumberEnd(split);
+            }
+            total += FareTextParser.parsePriceFen(sample[1]);
+            total += FareTextParser.parseMinuteOfDay(sample[2]) + FareTextParser.parseDayOffset(sample[2]);
+        }
+        sink += total;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,67 @@
+package crawler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorded Ctrip flight-list responses from a directory, parsed with
+ * CtripResponseParser. Lets searches, the aggregator and the UI run offline
+ * and reproducibly.
+ *
+ * For a search sha -> kix on 2026-11-01 it reads sha-kix-2026-11-01.json,
+ * or else sha-kix.json (any date); no file means no flights. An optional
+ * latency simulates a slow source.
+ */
+public class FixtureFareSource implements FareSource {
+
+    private final Path directory;
+    private final String name;
+    private final Duration latency;
+
+    public FixtureFareSource(Path directory) {
+        this(directory, "fixture", Duration.ZERO);
+    }
+
+    public FixtureFareSource(Path directory, String name, Duration latency) {
+        this.directory = directory;
+        this.name = name;
+        this.latency = latency;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<FlightData> search(String originCode, String destinationCode, String date)
+            throws IOException, InterruptedException {
+        if (!latency.isZero()) {
+            Thread.sleep(latency.toMillis());
+        }
+        Path file = fixtureFile(directory, originCode, destinationCode, date);
+        if (file == null) {
+            return new ArrayList<>();
+        }
+        String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        return CtripResponseParser.parse(json, AirportCode.canonical(originCode),
+                AirportCode.canonical(destinationCode), date);
+    }
+
+    /**
+     * The recorded response for a search, or null if there is none.
+     */
+    static Path fixtureFile(Path directory, String originCode, String destinationCode, String date) {
+        String route = originCode.toLowerCase() + "-" + destinationCode.toLowerCase();
+        Path file = directory.resolve(route + "-" + date + ".json");
+        if (!Files.isRegularFile(file)) {
+            file = directory.resolve(route + ".json");
+        }
+        return Files.isRegularFile(file) ? file : null;
+    }
+}
@@ -1,78 +1,281 @@
 package crawler;
 
 import com.microsoft.playwright.*;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import store.FareStore;
+import store.PriceHistory;
 
 public class FlightCrawler {
 
     // Configuration
     private static final int THREAD_COUNT = 4;
+    // Per-host politeness for the batch crawler
+    private static final double HOST_REQUESTS_PER_SECOND = 0.5;
+    private static final int HOST_BURST = 2;
     private static final String PATH_TO_CSV_FILE = "C:\\Users\\Administrator\\Desktop\\mypage\\flight_data_database.csv";
 
-    // Persistent Playwright instances
-    private static Playwright playwright;
-    private static Browser browser;
-    private static BrowserContext context;
+    // Interactive search pool: small, pages recycled after a few dozen searches
+    private static final int SEARCH_POOL_WORKERS = 2;
+    private static final int CONTEXTS_PER_WORKER = 2;
+    private static final int MAX_PAGE_USES = 25;
+
+    // Shared browser pool for searchFlights (created on first search)
+    private static BrowserPool searchPool;
+    // Budget of a search whose caller gives no deadline, and of background refreshes
+    private static final Duration DEFAULT_SEARCH_BUDGET = Duration.ofSeconds(45);
+    // Time to first flights of recent interactive crawls, for HedgedSearch
+    private static final LatencyTracker SEARCH_LATENCY = new LatencyTracker(200, 20);
+
+    // Receivers of every crawled result set (fare store, price history, ...)
+    private static final List<Consumer<List<FlightData>>> RESULT_LISTENERS = new CopyOnWriteArrayList<>();
+
+    // Where the batch crawler persists fares; override with -Dcrawler.fareStore.dir
+    private static final String FARE_STORE_DIR = System.getProperty("crawler.fareStore.dir", "crawl-data/fares");
+    // Price history of every crawled fare; override with -Dcrawler.priceHistory.dir
+    private static final String PRICE_HISTORY_DIR = System.getProperty("crawler.priceHistory.dir",
+            "crawl-data/price-history");
+    private static PriceHistory priceHistory;
+    private static Consumer<List<FlightData>> priceHistoryListener;
+    // Checkpoint log of finished/failed batch jobs; override with -Dcrawler.journal
+    private static final String JOURNAL_FILE = System.getProperty("crawler.journal", "crawl-data/crawl-journal.log");
+    // Length of an incremental run, which sizes its default budget
+    private static final long INCREMENTAL_RUN_MINUTES = 60;
+
+    // Sources compareFares fans out to: Ctrip, plus recorded responses when
+    // -Dcrawler.fixtures.dir points at a directory of them (see FixtureFareSource)
+    private static final List<FareSource> FARE_SOURCES = new CopyOnWriteArrayList<>(defaultFareSources());
+
+    // Cached search results, bounded by total flights held
+    private static final int SEARCH_CACHE_MAX_FLIGHTS = 20000;
+    private static final SearchCache SEARCH_CACHE = new SearchCache(SEARCH_CACHE_MAX_FLIGHTS);
 
-    // Regex 1: 用于分离航空公司、航班号和机型 (e.g., 中国联合航空KN5988?波音737(中) -> Group1: 中国联合航空,
-    // Group2: KN5988, Group3: 波音737(中))
-    private static final Pattern AIRLINE_INFO_PATTERN = Pattern.compile("^(.*?)([A-Za-z0-9]+)\\?(.*)$");
-    // Regex 2: 用于从URL中提取三字码和日期 (e.g., oneway-sha-hjj?depdate=2025-12-03)
-    private static final Pattern URL_ROUTE_PATTERN = Pattern
-            .compile("/oneway-(\\w{3})-(\\w{3})\\?depdate=(\\d{4}-\\d{2}-\\d{2})");
-
-    public static void main(String[] args) {
-        // 1. Generate URLs internally
-        List<String> urls = FlightRouteGenerator.generateUrls();
+    /**
+     * How flight boxes are read from a result page.
+     * BULK pulls every box in one page.evaluate round trip; PER_ELEMENT issues
+     * a querySelector + innerText call per field (six IPC calls per flight).
+     */
+    public enum ExtractionMode {
+        BULK, PER_ELEMENT
+    }
 
-        // 3. Setup Playwright
-        try (Playwright playwright = Playwright.create()) {
-            Browser browser = playwright.chromium().launch(new BrowserType.LaunchOptions()
-                    .setHeadless(false));
+    private static volatile ExtractionMode extractionMode = ExtractionMode.BULK;
+
+    // Scroll completion: stop after this long without new flight boxes, or at the budget
+    private static final int SCROLL_QUIET_MS = 600;
+    private static final long SCROLL_BUDGET_MS = 10000;
+
+    // Runs in the page: scroll to the bottom and resolve with the flight box count
+    // once the list has not grown for quietMs (or budgetMs has passed)
+    private static final String SCROLL_UNTIL_QUIET_SCRIPT = "([quietMs, budgetMs]) => new Promise(resolve => {"
+            + "  const count = () => document.querySelectorAll('.flight-box').length;"
+            + "  let last = count();"
+            + "  let quietTimer;"
+            + "  let hardTimer;"
+            + "  let observer;"
+            + "  const finish = () => {"
+            + "    observer.disconnect(); clearTimeout(quietTimer); clearTimeout(hardTimer); resolve(count());"
+            + "  };"
+            + "  const rearm = () => { clearTimeout(quietTimer); quietTimer = setTimeout(finish, quietMs); };"
+            + "  observer = new MutationObserver(() => {"
+            + "    const current = count();"
+            + "    if (current !== last) { last = current; window.scrollTo(0, document.body.scrollHeight); rearm(); }"
+            + "  });"
+            + "  observer.observe(document.body, { childList: true, subtree: true });"
+            + "  hardTimer = setTimeout(finish, budgetMs);"
+            + "  window.scrollTo(0, document.body.scrollHeight);"
+            + "  rearm();"
+            + "})";
+
+    // Streaming searches: after each chunk is extracted, wait this long for
+    // the next one to finish rendering before extracting again
+    private static final int SCROLL_SETTLE_MS = 150;
+
+    // Runs in the page: scroll to the bottom and resolve with the flight box
+    // count once more than `seen` boxes exist and rendering has paused for
+    // settleMs, or once nothing has appeared for quietMs (or budgetMs has passed)
+    private static final String SCROLL_STEP_SCRIPT = "([seen, quietMs, settleMs, budgetMs]) => new Promise(resolve => {"
+            + "  const count = () => document.querySelectorAll('.flight-box').length;"
+            + "  let timer;"
+            + "  let hardTimer;"
+            + "  let observer;"
+            + "  const finish = () => {"
+            + "    observer.disconnect(); clearTimeout(timer); clearTimeout(hardTimer); resolve(count());"
+            + "  };"
+            + "  const arm = ms => { clearTimeout(timer); timer = setTimeout(finish, ms); };"
+            + "  observer = new MutationObserver(() => { if (count() > seen) arm(settleMs); });"
+            + "  observer.observe(document.body, { childList: true, subtree: true });"
+            + "  hardTimer = setTimeout(finish, budgetMs);"
+            + "  window.scrollTo(0, document.body.scrollHeight);"
+            + "  arm(count() > seen ? 0 : quietMs);"
+            + "})";
+
+    // Override with -Dcrawler.ctrip.baseUrl=http://127.0.0.1:8080 to run against a
+    // local stand-in that serves recorded pages and payloads
+    private static final String CTRIP_BASE_URL = System.getProperty("crawler.ctrip.baseUrl",
+            "https://flights.ctrip.com");
+    // Path fragment of the XHR that carries the flight list
+    static final String FLIGHT_LIST_API = System.getProperty("crawler.ctrip.flightListApi",
+            "/search/api/search/batchSearch");
+
+    // When enabled, searches parse the flight-list JSON response instead of the rendered DOM
+    private static volatile boolean networkCapture = false;
+
+    // Runs in the page: one structured record per .flight-box, same fields as
+    // the per-element path. Boxes before index `from` were extracted already.
+    private static final String BULK_EXTRACT_SCRIPT = "(boxes, from) => boxes.slice(from).map(box => {"
+            + "  const text = sel => { const el = box.querySelector(sel); return el ? el.innerText.trim() : 'N/A'; };"
+            + "  return {"
+            + "    airline: text('.airline-name'),"
+            + "    depAirport: text('.depart-box .airport'),"
+            + "    arrAirport: text('.arrive-box .airport'),"
+            + "    depTime: text('.depart-box .time'),"
+            + "    arrTime: text('.arrive-box .time'),"
+            + "    price: text('.price')"
+            + "  };"
+            + "})";
 
-            // 4. Create Thread Pool
-            ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    /**
+     * Without arguments, crawls the sample routes. A full crawl is enumerated
+     * lazily from the route generator:
+     * --from=2026-03-01 --days=30 [--shard=0/4] [--routes=sha-ctu,bjs-can] [--offset=N]
+     *
+     * Progress is checkpointed to the crawl journal: a run interrupted before
+     * going through all its jobs is resumed by the next run with the same
+     * arguments, which skips jobs that already finished and retries failed
+     * ones after their backoff. Pass --fresh=true to start over instead.
+     *
+     * --incremental=true [--budget=N] [--window=MINUTES] crawls only
+     * route/dates whose fares are due for a refresh (see FreshnessPolicy),
+     * most overdue first, at most N: by default as many as the crawl threads
+     * get through in the window (60 minutes unless given).
+     */
+    public static void main(String[] args) {
+        // 1. Enumerate jobs: sample URLs, or a lazy (sharded, filtered) route/date source
+        Map<String, String> options;
+        java.util.Iterator<CrawlJob> jobs;
+        try {
+            options = parseOptions(args);
+            jobs = jobSource(options);
+        } catch (RuntimeException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            return;
+        }
 
-            for (String url : urls) {
-                executor.submit(() -> processUrl(browser, url));
+        // 2. Setup Playwright: one browser worker per crawl thread, persisting every result
+        try (CrawlJournal journal = CrawlJournal.open(Paths.get(JOURNAL_FILE));
+                FareStore fareStore = FareStore.open(Paths.get(FARE_STORE_DIR));
+                BrowserPool pool = new BrowserPool(THREAD_COUNT, 1, MAX_PAGE_USES, false,
+                        ResourceBlockingProfile.defaultProfile())) {
+            Consumer<List<FlightData>> persist = flights -> {
+                try {
+                    fareStore.appendAll(flights, System.currentTimeMillis());
+                } catch (IOException e) {
+                    System.err.println("Could not persist fares: " + e.getMessage());
+                }
+            };
+            addResultListener(persist);
+            getPriceHistory();
+
+            // Resume an interrupted run with the same arguments unless asked to start over
+            String runKey = runKey(options);
+            if (journal.beginRun(runKey, Boolean.parseBoolean(options.get("fresh")))) {
+                System.out.println("Resuming run [" + runKey + "]: " + journal.finishedCount()
+                        + " jobs already finished in " + JOURNAL_FILE);
             }
 
-            // 5. Shutdown Logic
-            try {
-                executor.awaitTermination(24, TimeUnit.HOURS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            // 3. Schedule: priority by departure date, rate-limited per host, AIMD concurrency
+            CrawlScheduler scheduler = new CrawlScheduler(pool, 1, THREAD_COUNT, HOST_REQUESTS_PER_SECOND,
+                    HOST_BURST);
+            scheduler.setCompletionListener(journal::record);
+            if (Boolean.parseBoolean(options.get("incremental"))) {
+                long window = Long.parseLong(options.getOrDefault("window", String.valueOf(INCREMENTAL_RUN_MINUTES)));
+                int budget = options.containsKey("budget") ? Integer.parseInt(options.get("budget"))
+                        : FreshnessPolicy.defaultBudget(THREAD_COUNT, window);
+                scheduler.submitAll(new FreshnessPolicy(journal).due(jobs, budget, System.currentTimeMillis()));
+            } else {
+                scheduler.submitFrom(journal.resume(jobs));
             }
+            scheduler.run(FlightCrawler::processUrl);
+            journal.completeRun();
+            removeResultListener(persist);
+            System.out.println("Fare store holds " + fareStore.recordCount() + " fares.");
+            closePriceHistory();
+        } catch (IOException e) {
+            System.err.println("Could not open crawl storage: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Crawl interrupted.");
         }
         System.out.println("Crawling complete.");
     }
 
-    private static void processUrl(Browser browser, String url) {
-        // --- 1. Extract Route/Date from URL ---
-        Matcher matcher = URL_ROUTE_PATTERN.matcher(url);
-        String originCode = "N/A";
-        String destinationCode = "N/A";
-        String date = "N/A";
+    /**
+     * Identifies a batch run's job source: its options, minus --fresh.
+     */
+    private static String runKey(Map<String, String> options) {
+        Map<String, String> sorted = new java.util.TreeMap<>(options);
+        sorted.remove("fresh");
+        return sorted.isEmpty() ? "samples" : sorted.toString();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new java.util.HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
 
-        if (matcher.find()) {
-            originCode = matcher.group(1).toUpperCase();
-            destinationCode = matcher.group(2).toUpperCase();
-            date = matcher.group(3);
+    private static java.util.Iterator<CrawlJob> jobSource(Map<String, String> options) {
+        if (!options.containsKey("from") && !options.containsKey("days")) {
+            List<CrawlJob> jobs = new java.util.ArrayList<>();
+            for (String url : FlightRouteGenerator.generateUrls()) {
+                jobs.add(CrawlJob.fromUrl(url));
+            }
+            return jobs.iterator();
         }
 
-        // --- 2. Start Playwright Process ---
-        BrowserContext context = browser.newContext(new Browser.NewContextOptions()
-                .setUserAgent(
-                        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36")
-                .setViewportSize(1920, 1080));
+        java.time.LocalDate from = java.time.LocalDate.parse(
+                options.getOrDefault("from", java.time.LocalDate.now().plusDays(1).toString()));
+        RouteJobSource source = FlightRouteGenerator.allRoutes(from,
+                Integer.parseInt(options.getOrDefault("days", "1")));
+        if (options.containsKey("shard")) {
+            String[] shard = options.get("shard").split("/");
+            source = source.shard(Integer.parseInt(shard[0]), Integer.parseInt(shard[1]));
+        }
+        if (options.containsKey("routes")) {
+            source = source.allowRoutes(Arrays.asList(options.get("routes").split(",")));
+        }
+        if (options.containsKey("offset")) {
+            source = source.startingAt(Long.parseLong(options.get("offset")));
+        }
+        System.out.println("Crawling " + options + " over an index space of " + source.indexSpace() + " route/dates");
+        return source.iterator();
+    }
 
-        Page page = context.newPage();
+    private static CrawlOutcome processUrl(Page page, CrawlJob job) {
+        String url = job.getUrl();
+        String originCode = job.getOriginCode();
+        String destinationCode = job.getDestinationCode();
+        String date = job.getDate();
 
+        // --- Crawl on the pooled page ---
         try {
             System.out.println("Processing: " + url);
             page.navigate(url);
@@ -83,22 +286,47 @@ public class FlightCrawler {
             try {
                 page.waitForSelector(".flight-box", new Page.WaitForSelectorOptions().setTimeout(30000));
             } catch (TimeoutError e) {
+                if (isCaptchaPage(page)) {
+                    System.err.println("Captcha shown for " + originCode + "-" + destinationCode + ".");
+                    return CrawlOutcome.CAPTCHA;
+                }
                 System.err.println("Timeout: Flight list did not appear for " + originCode + "-" + destinationCode
                         + ". Check Captcha/Anti-Bot.");
+                return CrawlOutcome.TIMEOUT;
             }
 
             autoScroll(page);
 
-            List<ElementHandle> flightBoxes = page.querySelectorAll(".flight-box");
+            List<FlightInfo> flights = extractAll(page, extractionMode, originCode, destinationCode, date);
 
-            if (flightBoxes.isEmpty()) {
+            if (flights.isEmpty()) {
                 System.out.println("No flights found for: " + originCode + "-" + destinationCode + " on " + date);
+                return CrawlOutcome.EMPTY;
             }
+            System.out.println("Extracted " + flights.size() + " flights for: " + originCode + "-"
+                    + destinationCode + " on " + date);
+            job.setLowestPriceFen(lowestPriceFen(flights));
+            publishResults(flights);
+            return CrawlOutcome.SUCCESS;
 
         } catch (Exception e) {
             System.err.println("Error processing " + url + ": " + e.getMessage());
-        } finally {
-            context.close();
+            return CrawlOutcome.ERROR;
+        }
+    }
+
+    /**
+     * Ctrip redirects to a slider/verification page when it suspects a bot.
+     */
+    private static boolean isCaptchaPage(Page page) {
+        String currentUrl = page.url().toLowerCase();
+        if (currentUrl.contains("captcha") || currentUrl.contains("verify")) {
+            return true;
+        }
+        try {
+            return page.locator("text=安全验证").count() > 0 || page.locator("#slider").count() > 0;
+        } catch (Exception e) {
+            return false;
         }
     }
 
@@ -107,6 +335,25 @@ public class FlightCrawler {
      * This method is called by the JavaFX application.
      */
     public static List<FlightInfo> searchFlights(String origin, String destination, String date) {
+        return searchFlights(origin, destination, date, null);
+    }
+
+    /**
+     * Search with stale-while-revalidate: if only an outdated cached result
+     * exists it is returned immediately, and onRefresh later receives the
+     * freshly crawled list (called on a background thread).
+     */
+    public static List<FlightInfo> searchFlights(String origin, String destination, String date,
+            Consumer<List<FlightInfo>> onRefresh) {
+        return searchFlights(origin, destination, date, onRefresh, Deadline.after(DEFAULT_SEARCH_BUDGET));
+    }
+
+    /**
+     * As above, answering by the deadline. A crawl cut short by it returns the
+     * flights found so far, which are not cached.
+     */
+    public static List<FlightInfo> searchFlights(String origin, String destination, String date,
+            Consumer<List<FlightInfo>> onRefresh, Deadline deadline) {
         List<FlightInfo> results = new java.util.ArrayList<>();
 
         // 1. Resolve Codes
@@ -118,63 +365,443 @@ public class FlightCrawler {
             return results;
         }
 
-        // 2. Construct URL
+        // 2. Serve from cache, or crawl once for all concurrent identical searches;
+        // a background refresh is not bound by this caller's deadline
+        Thread caller = Thread.currentThread();
+        List<FlightInfo> cached = SEARCH_CACHE.get(originCode, destCode, date,
+                () -> crawlFlights(originCode, destCode, date, null,
+                        Thread.currentThread() == caller ? deadline : Deadline.after(DEFAULT_SEARCH_BUDGET)),
+                onRefresh);
+        System.out.println(SEARCH_CACHE.getStats());
+        return cached;
+    }
+
+    /**
+     * Streaming search: flights reach the sink in chunks as the result page
+     * renders and scrolls, so the first ones arrive after one viewport rather
+     * than after the whole list. A cached result arrives as a single chunk,
+     * and a stale one is followed by onRefresh. Blocks until the search is
+     * complete or the sink cancels it, and returns every flight delivered.
+     */
+    public static List<FlightInfo> streamFlights(String origin, String destination, String date, SearchSink sink) {
+        return streamFlights(origin, destination, date, sink, Deadline.after(DEFAULT_SEARCH_BUDGET));
+    }
+
+    /**
+     * As above, completing by the deadline: a crawl still scrolling when it
+     * passes stops there, with the flights delivered so far as its result
+     * (not cached).
+     */
+    public static List<FlightInfo> streamFlights(String origin, String destination, String date, SearchSink sink,
+            Deadline deadline) {
+        String originCode = CityCodeMapper.getCityCode(origin);
+        String destCode = CityCodeMapper.getCityCode(destination);
+        if (originCode == null || destCode == null) {
+            System.err.println("Could not resolve  codes for: " + origin + " -> " + destination);
+            sink.onComplete(List.of());
+            return List.of();
+        }
+
+        // Only a crawl run for this call streams; a background refresh or a
+        // crawl joined from another caller is delivered whole
+        Thread caller = Thread.currentThread();
+        boolean[] streamed = new boolean[1];
+        List<FlightInfo> results = SEARCH_CACHE.get(originCode, destCode, date, () -> {
+            boolean inline = Thread.currentThread() == caller;
+            streamed[0] |= inline;
+            return inline ? crawlFlights(originCode, destCode, date, sink, deadline)
+                    : crawlFlights(originCode, destCode, date, null, Deadline.after(DEFAULT_SEARCH_BUDGET));
+        }, sink::onRefresh);
+        System.out.println(SEARCH_CACHE.getStats());
+
+        if (!streamed[0] && !results.isEmpty() && !sink.isCancelled()) {
+            sink.onFlights(results);
+        }
+        sink.onComplete(results);
+        return results;
+    }
+
+    /**
+     * Search every registered fare source in parallel and merge the results
+     * (cheapest offer per flight, direct flights first). Returns by the
+     * deadline; sources that have not answered by then are left out.
+     */
+    public static FareAggregator.Result compareFares(String origin, String destination, String date,
+            java.time.Duration deadline) throws InterruptedException {
+        FareAggregator.Result result = new FareAggregator(FARE_SOURCES).search(origin, destination, date, deadline);
+        System.out.println("Compared fares " + origin + " -> " + destination + " on " + date + ": " + result);
+        return result;
+    }
+
+    /**
+     * The sources compareFares queries, in order.
+     */
+    public static List<FareSource> getFareSources() {
+        return java.util.Collections.unmodifiableList(FARE_SOURCES);
+    }
+
+    public static void addFareSource(FareSource source) {
+        FARE_SOURCES.add(source);
+    }
+
+    public static void removeFareSource(FareSource source) {
+        FARE_SOURCES.remove(source);
+    }
+
+    private static List<FareSource> defaultFareSources() {
+        List<FareSource> sources = new java.util.ArrayList<>();
+        sources.add(new CtripFareSource());
+        String fixtures = System.getProperty("crawler.fixtures.dir");
+        if (fixtures != null) {
+            sources.add(new FixtureFareSource(Paths.get(fixtures)));
+        }
+        return sources;
+    }
+
+    /**
+     * Flexible-date search: runs searchFlights for every day of the calendar
+     * in parallel, but never more at once than the search pool has browser
+     * workers. Days nearest the requested date start first, and each result
+     * (or later stale-while-revalidate refresh) is handed to the calendar as
+     * it arrives. Returns once every day has completed or been cancelled.
+     */
+    public static FareCalendar searchFareCalendar(String origin, String destination, FareCalendar calendar)
+            throws InterruptedException {
+        Semaphore permits = new Semaphore(getSearchPool().size(), true);
+        try (ExecutorService days = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String date : calendar.searchOrder()) {
+                days.submit(() -> {
+                    permits.acquire();
+                    try {
+                        if (!calendar.isCancelled()) {
+                            calendar.complete(date, searchFlights(origin, destination, date,
+                                    refreshed -> calendar.complete(date, refreshed)));
+                        }
+                    } catch (Exception e) {
+                        // One failed day should not hold up the rest of the calendar
+                        System.err.println("Fare calendar search for " + date + " failed: " + e.getMessage());
+                        calendar.complete(date, List.of());
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                });
+            }
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Fare calendar search interrupted");
+        }
+        return calendar;
+    }
+
+    /**
+     * Crawl the result page for a resolved route, bypassing the cache, and
+     * hand flights to the sink (if any) as they are extracted. Runs as a
+     * HedgedSearch: a second worker takes over a slow page, and everything
+     * is bounded by the deadline. A crawl cancelled or cut short by the
+     * deadline is incomplete: the flights found so far still answer the
+     * search (and any caller that joined it), but are not cached.
+     */
+    private static SearchCache.Loaded crawlFlights(String originCode, String destCode, String date,
+            SearchSink sink, Deadline deadline) {
+        List<FlightInfo> results = new java.util.ArrayList<>();
+
+        // Construct URL
         String url = String.format(
-                "https://flights.ctrip.com/online/list/oneway-%s-%s?depdate=%s&cabin=y&adult=1&child=0&infant=0",
+                CTRIP_BASE_URL + "/online/list/oneway-%s-%s?depdate=%s&cabin=y&adult=1&child=0&infant=0",
                 originCode, destCode, date);
 
         System.out.println("Searching URL: " + url);
 
-        // 3. Launch Browser & Scrape (Persistent)
+        // Scrape on a pooled browser worker, hedged onto a second one if slow
         try {
-            // Initialize Playwright/Browser if not already active
-            if (playwright == null) {
-                playwright = Playwright.create();
-            }
-            if (browser == null || !browser.isConnected()) {
-                browser = playwright.chromium().launch(new BrowserType.LaunchOptions()
-                        .setHeadless(false)); // Show browser as requested
-            }
-            if (context == null) {
-                context = browser.newContext(new Browser.NewContextOptions()
-                        .setUserAgent(
-                                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36")
-                        .setViewportSize(1920, 1080));
+            HedgedSearch search = new HedgedSearch(getSearchPool(), SEARCH_LATENCY);
+            results.addAll(search.run(originCode + "-" + destCode + " " + date,
+                    (page, attempt) -> scrapeResults(page, url, AirportCode.canonical(originCode),
+                            AirportCode.canonical(destCode), date, attempt, deadline),
+                    sink, deadline));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        publishResults(results);
+        if (sink != null && sink.isCancelled()) {
+            System.out.println("Search cancelled after " + results.size() + " flights.");
+            return SearchCache.Loaded.partial(results);
+        }
+        if (deadline.isExpired()) {
+            // Every wait is capped by the deadline, so a crawl still running then stopped early
+            System.out.println("Search hit its deadline after " + results.size() + " flights.");
+            return SearchCache.Loaded.partial(results);
+        }
+        return SearchCache.Loaded.complete(results);
+    }
+
+    /**
+     * Register a receiver for every result set the crawler produces, from both
+     * batch crawls and interactive searches. Called on crawler threads.
+     */
+    public static void addResultListener(Consumer<List<FlightData>> listener) {
+        RESULT_LISTENERS.add(listener);
+    }
+
+    public static void removeResultListener(Consumer<List<FlightData>> listener) {
+        RESULT_LISTENERS.remove(listener);
+    }
+
+    /**
+     * Price history of every crawled flight, opened on first use and from
+     * then on fed every result set the crawler publishes. Null if it cannot
+     * be opened.
+     */
+    public static synchronized PriceHistory getPriceHistory() {
+        if (priceHistory == null) {
+            try {
+                PriceHistory history = PriceHistory.open(Paths.get(PRICE_HISTORY_DIR));
+                priceHistoryListener = flights -> {
+                    try {
+                        history.recordAll(flights, System.currentTimeMillis());
+                    } catch (IOException e) {
+                        System.err.println("Could not record price history: " + e.getMessage());
+                    }
+                };
+                addResultListener(priceHistoryListener);
+                priceHistory = history;
+                System.out.println("Price history holds " + history.pointCount() + " prices.");
+            } catch (IOException e) {
+                System.err.println("Could not open price history: " + e.getMessage());
             }
+        }
+        return priceHistory;
+    }
 
-            Page page = context.newPage();
+    /**
+     * Stop recording and write out the open price history blocks.
+     */
+    public static synchronized void closePriceHistory() {
+        if (priceHistory != null) {
+            removeResultListener(priceHistoryListener);
+            priceHistory.close();
+            priceHistory = null;
+        }
+    }
 
-            page.navigate(url);
-            handlePopups(page);
+    private static long lowestPriceFen(List<FlightInfo> flights) {
+        long lowest = -1;
+        for (FlightInfo info : flights) {
+            long fen = FareTextParser.parsePriceFen(info.getPrice());
+            if (fen > 0 && (lowest < 0 || fen < lowest)) {
+                lowest = fen;
+            }
+        }
+        return lowest;
+    }
 
-            // Wait for results
+    private static void publishResults(List<FlightInfo> flights) {
+        if (flights.isEmpty() || RESULT_LISTENERS.isEmpty()) {
+            return;
+        }
+        List<FlightData> data = new java.util.ArrayList<>(flights.size());
+        for (FlightInfo info : flights) {
+            // Unpriced rows would reach the stores as 0.0 fares
+            if (info.hasPrice()) {
+                data.add(info.toFlightData());
+            }
+        }
+        if (data.isEmpty()) {
+            return;
+        }
+        for (Consumer<List<FlightData>> listener : RESULT_LISTENERS) {
             try {
-                page.waitForSelector(".flight-box", new Page.WaitForSelectorOptions().setTimeout(15000));
-            } catch (TimeoutError e) {
-                System.err.println("Timeout waiting for flight list.");
+                listener.accept(data);
+            } catch (RuntimeException e) {
+                System.err.println("Result listener failed: " + e.getMessage());
             }
+        }
+    }
 
-            autoScroll(page);
+    /**
+     * Hit/miss/eviction counters of the search result cache.
+     */
+    public static SearchCache getSearchCache() {
+        return SEARCH_CACHE;
+    }
 
-            List<ElementHandle> flightBoxes = page.querySelectorAll(".flight-box");
-            System.out.println("Found " + flightBoxes.size() + " flights.");
+    private static synchronized BrowserPool getSearchPool() {
+        if (searchPool == null) {
+            // Show browser as requested
+            searchPool = new BrowserPool(SEARCH_POOL_WORKERS, CONTEXTS_PER_WORKER, MAX_PAGE_USES, false,
+                    ResourceBlockingProfile.defaultProfile());
+        }
+        return searchPool;
+    }
 
-            for (ElementHandle box : flightBoxes) {
-                FlightInfo info = extractFlightData(box, origin, destination, date);
-                if (info != null) {
-                    results.add(info);
+    /**
+     * Runs on a browser worker thread: load the result page and stream every
+     * flight box to the sink. Every wait is capped by the deadline.
+     */
+    private static List<FlightInfo> scrapeResults(Page page, String url, String origin, String destination,
+            String date, SearchSink sink, Deadline deadline) {
+        if (networkCapture) {
+            List<FlightInfo> captured = captureFlightList(page, url, origin, destination, date, deadline);
+            if (!captured.isEmpty()) {
+                System.out.println("Captured " + captured.size() + " flights from search response.");
+                if (!sink.isCancelled()) {
+                    sink.onFlights(captured);
                 }
+                return captured;
             }
+            System.err.println("No flight-list response captured, falling back to DOM extraction.");
+        } else {
+            page.navigate(url, new Page.NavigateOptions().setTimeout(deadline.timeout(30000)));
+        }
+        handlePopups(page);
+        if (sink.isCancelled()) {
+            // The other attempt of a hedged search has already answered
+            return new java.util.ArrayList<>();
+        }
 
-            // Note: Browser and Page remain open as requested.
+        // Wait for results
+        try {
+            page.waitForSelector(".flight-box",
+                    new Page.WaitForSelectorOptions().setTimeout(deadline.timeout(15000)));
+        } catch (TimeoutError e) {
+            System.err.println("Timeout waiting for flight list (" + deadline + ").");
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+        return streamResults(page, origin, destination, date, sink, deadline);
+    }
+
+    /**
+     * Runs on a browser worker thread: extract the boxes already rendered,
+     * hand them to the sink, scroll for the next chunk and repeat, until the
+     * list stops growing (same stopping rules as autoScroll), the sink
+     * cancels or the search deadline passes.
+     */
+    private static List<FlightInfo> streamResults(Page page, String origin, String destination, String date,
+            SearchSink sink, Deadline searchDeadline) {
+        List<FlightInfo> results = new java.util.ArrayList<>();
+        long start = System.currentTimeMillis();
+        long deadline = start + Math.min(SCROLL_BUDGET_MS, searchDeadline.remainingMillis());
+        int seen = 0;
+        try (RequestTracker requests = new RequestTracker(page)) {
+            while (!sink.isCancelled()) {
+                List<FlightInfo> chunk = new java.util.ArrayList<>();
+                seen += extractFrom(page, extractionMode, seen, origin, destination, date, chunk);
+                if (!chunk.isEmpty()) {
+                    if (results.isEmpty()) {
+                        System.out.println("First " + chunk.size() + " flights after "
+                                + (System.currentTimeMillis() - start) + " ms.");
+                    }
+                    results.addAll(chunk);
+                    sink.onFlights(chunk);
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    System.err.println("Scroll budget exhausted with " + seen + " flights loaded.");
+                    break;
+                }
+                Object count = page.evaluate(SCROLL_STEP_SCRIPT,
+                        Arrays.asList(seen, SCROLL_QUIET_MS, SCROLL_SETTLE_MS, remaining));
+                if (count instanceof Number && ((Number) count).intValue() <= seen && requests.isIdle()) {
+                    break;
+                }
+            }
         }
+        System.out.println("Found " + results.size() + " flights.");
+        return results;
+    }
 
+    /**
+     * Navigate to the result page and parse the first flight-list XHR/fetch
+     * response, without waiting for render or scrolling. Returns an empty list
+     * if no such response arrives in time; the page is left loaded either way.
+     */
+    private static List<FlightInfo> captureFlightList(Page page, String url, String origin, String destination,
+            String date, Deadline deadline) {
+        List<FlightInfo> results = new java.util.ArrayList<>();
+        try {
+            Response response = page.waitForResponse(
+                    r -> r.url().contains(FLIGHT_LIST_API) && r.status() == 200,
+                    new Page.WaitForResponseOptions().setTimeout(deadline.timeout(15000)),
+                    () -> page.navigate(url, new Page.NavigateOptions().setTimeout(deadline.timeout(30000))));
+            for (FlightData flight : CtripResponseParser.parse(response.text(), origin, destination, date)) {
+                results.add(FlightInfo.fromFlightData(flight, origin, destination));
+            }
+        } catch (TimeoutError e) {
+            System.err.println("Timeout waiting for flight-list response.");
+        }
         return results;
     }
 
+    public static void setNetworkCapture(boolean enabled) {
+        networkCapture = enabled;
+    }
+
+    public static void setExtractionMode(ExtractionMode mode) {
+        extractionMode = mode;
+    }
+
+    public static ExtractionMode getExtractionMode() {
+        return extractionMode;
+    }
+
+    /**
+     * Extract every flight box currently rendered on the page.
+     */
+    static List<FlightInfo> extractAll(Page page, ExtractionMode mode, String originCode, String destinationCode,
+            String date) {
+        List<FlightInfo> results = new java.util.ArrayList<>();
+        extractFrom(page, mode, 0, originCode, destinationCode, date, results);
+        return results;
+    }
+
+    /**
+     * Extract the flight boxes from index `from` on into results.
+     *
+     * @return number of boxes examined (including any that did not parse)
+     */
+    private static int extractFrom(Page page, ExtractionMode mode, int from, String originCode,
+            String destinationCode, String date, List<FlightInfo> results) {
+        if (mode == ExtractionMode.BULK) {
+            Object raw = page.evalOnSelectorAll(".flight-box", BULK_EXTRACT_SCRIPT, from);
+            if (!(raw instanceof List)) {
+                return 0;
+            }
+            for (Object row : (List<?>) raw) {
+                if (row instanceof Map) {
+                    Map<?, ?> fields = (Map<?, ?>) row;
+                    FlightInfo info = buildFlightInfo(
+                            field(fields, "airline"), field(fields, "depAirport"), field(fields, "arrAirport"),
+                            field(fields, "depTime"), field(fields, "arrTime"), field(fields, "price"),
+                            originCode, destinationCode, date);
+                    if (info != null) {
+                        results.add(info);
+                    }
+                }
+            }
+            return ((List<?>) raw).size();
+        }
+
+        List<ElementHandle> flightBoxes = page.querySelectorAll(".flight-box");
+        for (int i = 0; i < flightBoxes.size(); i++) {
+            ElementHandle box = flightBoxes.get(i);
+            if (i >= from) {
+                FlightInfo info = extractFlightData(box, originCode, destinationCode, date);
+                if (info != null) {
+                    results.add(info);
+                }
+            }
+            box.dispose();
+        }
+        return Math.max(0, flightBoxes.size() - from);
+    }
+
+    private static String field(Map<?, ?> fields, String key) {
+        Object value = fields.get(key);
+        return value == null ? "N/A" : value.toString().trim();
+    }
+
     private static void handlePopups(Page page) {
         try {
             Locator closeBtn = page.locator("text=阅读并同意携程的服务协议");
@@ -185,36 +812,60 @@ public class FlightCrawler {
         }
     }
 
+    /**
+     * Scroll until the flight list stops growing.
+     * The page resolves a promise once no new .flight-box has been added for
+     * SCROLL_QUIET_MS (observed with a MutationObserver, re-scrolling on every
+     * growth); we stop once that happens with no request in flight, or the
+     * list did not grow across two rounds, or the hard budget runs out.
+     */
     private static void autoScroll(Page page) {
-        // **FIXED CASTING ISSUE HERE**: Ensure safe conversion from Playwright's
-        // Integer result to long.
-        long previousHeight = 0;
-        long currentHeight = 0;
-        int attempts = 0;
-
-        while (attempts < 5) {
-            Object result = page.evaluate("document.body.scrollHeight");
-            if (result instanceof Number) {
-                previousHeight = ((Number) result).longValue();
-            } else {
-                previousHeight = 0;
+        try (RequestTracker requests = new RequestTracker(page)) {
+            long deadline = System.currentTimeMillis() + SCROLL_BUDGET_MS;
+            long lastCount = -1;
+            while (true) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    System.err.println("Scroll budget exhausted with " + lastCount + " flights loaded.");
+                    break;
+                }
+                Object result = page.evaluate(SCROLL_UNTIL_QUIET_SCRIPT, Arrays.asList(SCROLL_QUIET_MS, remaining));
+                long count = result instanceof Number ? ((Number) result).longValue() : 0;
+
+                if (requests.isIdle() || count == lastCount) {
+                    break;
+                }
+                lastCount = count;
             }
+        }
+    }
 
-            page.mouse().wheel(0, 1000);
-            page.waitForTimeout(1000);
+    /**
+     * Tracks the page's requests in flight while scrolling. Pages are pooled,
+     * so the listeners are removed on close and never outlive one search.
+     */
+    private static class RequestTracker implements AutoCloseable {
+        private final Page page;
+        private final Set<Request> inFlight = new HashSet<>();
+        private final Consumer<Request> onStart = inFlight::add;
+        private final Consumer<Request> onDone = inFlight::remove;
+
+        RequestTracker(Page page) {
+            this.page = page;
+            page.onRequest(onStart);
+            page.onRequestFinished(onDone);
+            page.onRequestFailed(onDone);
+        }
 
-            result = page.evaluate("document.body.scrollHeight");
-            if (result instanceof Number) {
-                currentHeight = ((Number) result).longValue();
-            } else {
-                currentHeight = 0;
-            }
+        boolean isIdle() {
+            return inFlight.isEmpty();
+        }
 
-            if (currentHeight == previousHeight) {
-                attempts++;
-            } else {
-                attempts = 0;
-            }
+        @Override
+        public void close() {
+            page.offRequest(onStart);
+            page.offRequestFinished(onDone);
+            page.offRequestFailed(onDone);
         }
     }
 
@@ -229,53 +880,68 @@ public class FlightCrawler {
             String rawArrivalTime = safeText(box.querySelector(".arrive-box .time"));
             String rawPrice = safeText(box.querySelector(".price"));
 
-            // --- 1. Clean Airline Info ---
+            return buildFlightInfo(rawAirlineInfo, depAirport, arrAirport, depTime, rawArrivalTime, rawPrice,
+                    originCode, destinationCode, date);
+        } catch (Exception e) {
+            System.err.println("Error extracting individual flight: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Clean the raw texts of one flight box into a FlightInfo.
+     * Shared by the bulk and per-element extraction paths.
+     */
+    private static FlightInfo buildFlightInfo(String rawAirlineInfo, String depAirport, String arrAirport,
+            String depTime, String rawArrivalTime, String rawPrice, String originCode, String destinationCode,
+            String date) {
+        try {
+            // --- 1. Split Airline Info (e.g., 中国联合航空KN5988?波音737(中)) ---
             String airlineName = rawAirlineInfo;
             String flightNumber = "N/A";
             String aircraftType = "N/A";
-
-            // Apply Regex to split the information
-            Matcher infoMatcher = AIRLINE_INFO_PATTERN.matcher(rawAirlineInfo);
-            if (infoMatcher.find()) {
-                airlineName = infoMatcher.group(1).trim();
-                flightNumber = infoMatcher.group(2).trim();
-                aircraftType = infoMatcher.group(3).trim();
+            long split = FareTextParser.splitAirlineInfo(rawAirlineInfo);
+            if (split >= 0) {
+                int start = FareTextParser.flightNumberStart(split);
+                int end = FareTextParser.flightNumberEnd(split);
+                airlineName = rawAirlineInfo.substring(0, start).trim();
+                flightNumber = rawAirlineInfo.substring(start, end);
+                aircraftType = rawAirlineInfo.substring(end + 1).trim();
             }
 
-            // --- 2. Clean Arrival Time (Remove \n+X天 where X is any number) ---
-            // This handles +1天, +2天, +3天, etc. and also handles newlines
-            String cleanArrivalTime = rawArrivalTime.replaceAll("\\s*\\+\\d+天", "").trim();
+            // --- 2. Arrival Time: keep HH:MM, carry "+X天" as the day offset ---
+            int arrivalMinute = FareTextParser.parseMinuteOfDay(rawArrivalTime);
+            String cleanArrivalTime = arrivalMinute >= 0 ? FareTextParser.formatMinute(arrivalMinute)
+                    : rawArrivalTime.trim();
+            int arrivalDayOffset = FareTextParser.parseDayOffset(rawArrivalTime);
 
-            // --- 3. Clean Price (Remove ? and 起) ---
-            String cleanPrice = rawPrice.replaceAll("[?起\\s]", "").trim();
+            // --- 3. Price (e.g., ¥1234起) ---
+            String cleanPrice = FareTextParser.formatPriceFen(FareTextParser.parsePriceFen(rawPrice));
 
             return new FlightInfo(
                     airlineName, flightNumber, aircraftType,
                     depAirport, arrAirport, depTime, cleanArrivalTime,
-                    cleanPrice, originCode, destinationCode, date);
+                    cleanPrice, originCode, destinationCode, date, 0, arrivalDayOffset);
         } catch (Exception e) {
             System.err.println("Error extracting individual flight: " + e.getMessage());
             return null;
         }
     }
 
-    public static void closeBrowser() {
-        if (context != null) {
-            context.close();
-            context = null;
-        }
-        if (browser != null) {
-            browser.close();
-            browser = null;
-        }
-        if (playwright != null) {
-            playwright.close();
-            playwright = null;
+    public static synchronized void closeBrowser() {
+        if (searchPool != null) {
+            searchPool.close();
+            searchPool = null;
         }
     }
 
     private static String safeText(ElementHandle element) {
-        return element == null ? "N/A" : element.innerText().trim();
+        if (element == null) {
+            return "N/A";
+        }
+        String text = element.innerText().trim();
+        element.dispose();
+        return text;
     }
 
     // Updated FlightInfo class for clearer data separation (all String type)
@@ -291,11 +957,29 @@ public class FlightCrawler {
         private String originCode;
         private String destinationCode;
         private String date;
+        private int transferCount;
+        private int arrivalDayOffset;
 
         public FlightInfo(String airline, String flightNumber, String aircraftType, String departureAirport,
                 String arrivalAirport,
                 String departureTime, String arrivalTime, String price, String originCode, String destinationCode,
                 String date) {
+            this(airline, flightNumber, aircraftType, departureAirport, arrivalAirport, departureTime, arrivalTime,
+                    price, originCode, destinationCode, date, 0);
+        }
+
+        public FlightInfo(String airline, String flightNumber, String aircraftType, String departureAirport,
+                String arrivalAirport,
+                String departureTime, String arrivalTime, String price, String originCode, String destinationCode,
+                String date, int transferCount) {
+            this(airline, flightNumber, aircraftType, departureAirport, arrivalAirport, departureTime, arrivalTime,
+                    price, originCode, destinationCode, date, transferCount, 0);
+        }
+
+        public FlightInfo(String airline, String flightNumber, String aircraftType, String departureAirport,
+                String arrivalAirport,
+                String departureTime, String arrivalTime, String price, String originCode, String destinationCode,
+                String date, int transferCount, int arrivalDayOffset) {
             this.airline = airline;
             this.flightNumber = flightNumber;
             this.aircraftType = aircraftType;
@@ -307,6 +991,21 @@ public class FlightCrawler {
             this.originCode = originCode;
             this.destinationCode = destinationCode;
             this.date = date;
+            this.transferCount = transferCount;
+            this.arrivalDayOffset = arrivalDayOffset;
+        }
+
+        /**
+         * Build from a FlightData parsed out of a search response. The payload
+         * carries city codes rather than airport names.
+         */
+        public static FlightInfo fromFlightData(FlightData flight, String originCode, String destinationCode) {
+            String priceText = FareTextParser.formatPriceFen(Math.round(flight.getPrice() * 100));
+            return new FlightInfo(flight.getAirline(), flight.getFlightNumber(), "N/A",
+                    flight.getOrigin(), flight.getDestination(),
+                    flight.getDepartureTime(), flight.getArrivalTime(), priceText,
+                    originCode, destinationCode, flight.getDate(), flight.getTransferCount(),
+                    flight.getArrivalDayOffset());
         }
 
         // Getters
@@ -354,10 +1053,46 @@ public class FlightCrawler {
             return date;
         }
 
+        public int getTransferCount() {
+            return transferCount;
+        }
+
+        /**
+         * Days after the departure date on which the flight lands (0 same day).
+         */
+        public int getArrivalDayOffset() {
+            return arrivalDayOffset;
+        }
+
+        /**
+         * False if the price text did not parse ("N/A"); such a row is shown
+         * but is not a fare.
+         */
+        public boolean hasPrice() {
+            return FareTextParser.parsePriceFen(price) > 0;
+        }
+
+        /**
+         * Convert to the crawler's FlightData model. The DOM path never fills
+         * transfer details, so those flights are treated as direct. A row
+         * without a price (see hasPrice) gets 0.0, which is not a real fare.
+         */
+        public FlightData toFlightData() {
+            long priceFen = FareTextParser.parsePriceFen(price);
+            double priceValue = priceFen < 0 ? 0.0 : priceFen / 100.0;
+            return new FlightData(flightNumber, airline, departureTime, arrivalTime, priceValue,
+                    originCode, destinationCode, transferCount > 0, transferCount, date, arrivalDayOffset);
+        }
+
         @Override
         public String toString() {
-            return String.format("%s (%s) | %s - %s | %s -> %s | ¥%s",
-                    airline, flightNumber, departureTime, arrivalTime, departureAirport, arrivalAirport, price);
+            String transferInfo = transferCount > 0
+                    ? String.format(" | %d transfer%s", transferCount, transferCount > 1 ? "s" : "")
+                    : "";
+            String arrival = arrivalDayOffset > 0 ? arrivalTime + " +" + arrivalDayOffset + "天" : arrivalTime;
+            return String.format("%s (%s) | %s - %s | %s -> %s | ¥%s%s",
+                    airline, flightNumber, departureTime, arrival, departureAirport, arrivalAirport, price,
+                    transferInfo);
         }
     }
 }
\ No newline at end of file
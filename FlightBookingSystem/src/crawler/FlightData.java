@@ -11,6 +11,8 @@ public class FlightData implements Comparable<FlightData> {
     private boolean hasTransfer;
     private int transferCount;
     private String date;
+    // Days between departure and arrival date (the "+1天" on overnight flights)
+    private int arrivalDayOffset;
 
     public FlightData() {
     }
@@ -18,6 +20,13 @@ public class FlightData implements Comparable<FlightData> {
     public FlightData(String flightNumber, String airline, String departureTime,
             String arrivalTime, double price, String origin, String destination,
             boolean hasTransfer, int transferCount, String date) {
+        this(flightNumber, airline, departureTime, arrivalTime, price, origin, destination, hasTransfer,
+                transferCount, date, 0);
+    }
+
+    public FlightData(String flightNumber, String airline, String departureTime,
+            String arrivalTime, double price, String origin, String destination,
+            boolean hasTransfer, int transferCount, String date, int arrivalDayOffset) {
         this.flightNumber = flightNumber;
         this.airline = airline;
         this.departureTime = departureTime;
@@ -28,6 +37,7 @@ public class FlightData implements Comparable<FlightData> {
         this.hasTransfer = hasTransfer;
         this.transferCount = transferCount;
         this.date = date;
+        this.arrivalDayOffset = arrivalDayOffset;
     }
 
     // Getters
@@ -71,6 +81,10 @@ public class FlightData implements Comparable<FlightData> {
         return date;
     }
 
+    public int getArrivalDayOffset() {
+        return arrivalDayOffset;
+    }
+
     /**
      * Compare flights: direct flights first, then by price
      */
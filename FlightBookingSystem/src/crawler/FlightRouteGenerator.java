@@ -1,5 +1,6 @@
 package crawler;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -28,10 +29,22 @@ public class FlightRouteGenerator {
 
     public static List<String> generateUrls(String origin, String destination, String date) {
         List<String> urls = new ArrayList<>();
-        urls.add(String.format(BASE_URL, origin, destination, date));
+        urls.add(buildUrl(origin, destination, date));
         return urls;
     }
 
+    public static String buildUrl(String origin, String destination, String date) {
+        return String.format(BASE_URL, origin, destination, date);
+    }
+
+    /**
+     * Every ordered pair of known cities for each of the given days, enumerated
+     * lazily. Narrow it with shard(), allowRoutes() and startingAt().
+     */
+    public static RouteJobSource allRoutes(LocalDate firstDate, int days) {
+        return new RouteJobSource(ALL_PLACES, firstDate, days);
+    }
+
     /**
      * Generates a list of sample URLs for the main crawler when no arguments are provided.
      */
@@ -41,7 +54,7 @@ public class FlightRouteGenerator {
             for (String destination : SAMPLE_CITIES) {
                 if (!origin.equals(destination)) {
                     for (String date : SAMPLE_DATES) {
-                        urls.add(String.format(BASE_URL, origin, destination, date));
+                        urls.add(buildUrl(origin, destination, date));
                     }
                 }
             }
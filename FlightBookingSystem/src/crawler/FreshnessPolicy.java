@@ -0,0 +1,122 @@
+package crawler;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Decides when a route/date is due for another crawl in incremental mode.
+ *
+ * The refresh interval grows with days to departure and shrinks with the
+ * price volatility observed in the crawl journal; a route/date is due once
+ * its last successful crawl is older than that interval. Never-crawled jobs
+ * are due immediately, departed ones never.
+ */
+public class FreshnessPolicy {
+
+    private static final long HOUR_MS = 60 * 60000;
+    private static final long MIN_INTERVAL_MS = 30 * 60000;
+    // A route whose lowest fare moves 5% per crawl is refreshed twice as often
+    private static final double VOLATILITY_WEIGHT = 20;
+    // Route/date crawls one browser worker gets through per minute, page load and scroll included
+    private static final int CRAWLS_PER_WORKER_MINUTE = 4;
+
+    private final CrawlJournal journal;
+
+    public FreshnessPolicy(CrawlJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Base refresh interval by days to departure, before volatility.
+     */
+    static long baseIntervalMillis(long daysToDeparture) {
+        if (daysToDeparture <= 3) {
+            return 2 * HOUR_MS;
+        } else if (daysToDeparture <= 14) {
+            return 6 * HOUR_MS;
+        } else if (daysToDeparture <= 60) {
+            return 24 * HOUR_MS;
+        }
+        return 72 * HOUR_MS;
+    }
+
+    static long intervalMillis(long daysToDeparture, double volatility) {
+        long interval = (long) (baseIntervalMillis(daysToDeparture) / (1 + VOLATILITY_WEIGHT * volatility));
+        return Math.max(MIN_INTERVAL_MS, interval);
+    }
+
+    /**
+     * Time by which the job should have been recrawled: 0 if never crawled,
+     * Long.MAX_VALUE if the departure date has passed.
+     */
+    public long deadline(CrawlJob job) {
+        long days;
+        try {
+            days = LocalDate.parse(job.getDate()).toEpochDay() - LocalDate.now().toEpochDay();
+        } catch (DateTimeParseException e) {
+            return Long.MAX_VALUE;
+        }
+        if (days < 0) {
+            return Long.MAX_VALUE;
+        }
+        long lastFinished = journal.lastFinishedMillis(job.key());
+        if (lastFinished == 0) {
+            return 0;
+        }
+        return lastFinished + intervalMillis(days, journal.volatility(job.key()));
+    }
+
+    /**
+     * Budget for a run of the given length: about as many jobs as the
+     * workers can crawl in it. Jobs left over are still due next run.
+     */
+    public static int defaultBudget(int workers, long runMinutes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (long) workers * CRAWLS_PER_WORKER_MINUTE * runMinutes));
+    }
+
+    /**
+     * The most urgent due jobs (earliest deadline first), at most budget of
+     * them. Only the budget is held in memory while the source is scanned.
+     * Returned jobs carry their deadline as priority and any retry backoff
+     * from the journal as not-before time.
+     */
+    public List<CrawlJob> due(Iterator<CrawlJob> jobs, int budget, long now) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("Budget must be positive");
+        }
+        // Max-heap on deadline, so the least urgent of the kept jobs is dropped first
+        PriorityQueue<CrawlJob> kept = new PriorityQueue<>(
+                Comparator.comparingLong(CrawlJob::getPriority).reversed());
+        long scanned = 0;
+        long dueCount = 0;
+        while (jobs.hasNext()) {
+            CrawlJob job = jobs.next();
+            scanned++;
+            long deadline = deadline(job);
+            if (deadline > now) {
+                continue;
+            }
+            dueCount++;
+            if (kept.size() == budget) {
+                if (kept.peek().getPriority() <= deadline) {
+                    continue;
+                }
+                kept.poll();
+            }
+            CrawlJob urgent = job.withPriority(deadline);
+            urgent.setNotBeforeMillis(journal.retryNotBefore(job.key()));
+            kept.add(urgent);
+        }
+
+        List<CrawlJob> due = new ArrayList<>(kept);
+        due.sort(null);
+        System.out.println("Incremental crawl: " + dueCount + " of " + scanned + " route/dates due, crawling "
+                + due.size());
+        return due;
+    }
+}
@@ -0,0 +1,249 @@
+package crawler;
+
+import com.microsoft.playwright.Page;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs one interactive crawl within a deadline, hedging it when it is slow.
+ * The primary attempt starts on a pooled browser worker; if it has delivered
+ * no flights by the hedge delay (a high percentile of recent response times)
+ * and another worker is idle, a second attempt of the same crawl starts
+ * there. The first attempt to deliver flights wins: its chunks go on to the
+ * caller's sink, and the other attempt sees itself cancelled and stops.
+ * This trims the tail (a stuck page, a slow render) at the cost of an
+ * occasional duplicate page load.
+ */
+public class HedgedSearch {
+
+    // Hedge once the primary is slower than this share of recent searches
+    private static final double HEDGE_PERCENTILE = 0.9;
+    // Until enough searches have been timed
+    private static final long DEFAULT_HEDGE_DELAY_MS = 8000;
+    private static final long MIN_HEDGE_DELAY_MS = 2000;
+    // A hedge with less time than this left could not load a page anyway
+    private static final long MIN_HEDGE_BUDGET_MS = 4000;
+    // Attempts cap every wait at the deadline; this covers their last step
+    private static final long FINISH_GRACE_MS = 2000;
+
+    private static final ExecutorService ATTEMPT_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("hedged-search-", 0).factory());
+
+    /**
+     * The crawl to run, on a worker thread. It must hand every flight it
+     * finds to the sink and stop once the sink is cancelled.
+     */
+    public interface Crawl {
+        List<FlightCrawler.FlightInfo> run(Page page, SearchSink sink) throws Exception;
+    }
+
+    private final BrowserPool pool;
+    private final LatencyTracker latency;
+
+    public HedgedSearch(BrowserPool pool, LatencyTracker latency) {
+        this.pool = pool;
+        this.latency = latency;
+    }
+
+    /**
+     * Run the crawl and return the winning attempt's flights. Returns by the
+     * deadline (plus a short grace for the attempts to wrap up) with whatever
+     * the winner delivered so far.
+     *
+     * @param sink receives the winner's chunks as they arrive; may be null
+     */
+    public List<FlightCrawler.FlightInfo> run(String label, Crawl crawl, SearchSink sink, Deadline deadline)
+            throws Exception {
+        Race race = new Race(sink);
+        race.launch("primary", crawl, null, deadline);
+
+        long hedgeDelay = hedgeDelayMillis();
+        List<FlightCrawler.FlightInfo> result = race.await(Math.min(hedgeDelay, deadline.remainingMillis()));
+        if (result != null) {
+            return result;
+        }
+        if (race.shouldHedge() && deadline.remainingMillis() >= MIN_HEDGE_BUDGET_MS) {
+            BrowserPool.Lease lease = pool.tryLease();
+            if (lease != null) {
+                System.out.println("Hedging " + label + " after " + hedgeDelay + " ms on worker "
+                        + lease.workerId() + " (" + deadline + ").");
+                race.launch("hedge", crawl, lease, deadline);
+            } else {
+                System.out.println("No idle worker to hedge " + label + " after " + hedgeDelay + " ms.");
+            }
+        }
+
+        result = race.await(deadline.remainingMillis() + FINISH_GRACE_MS);
+        if (result != null) {
+            return result;
+        }
+        System.err.println("Search " + label + " missed its deadline; returning what arrived in time.");
+        return race.abandon();
+    }
+
+    public long hedgeDelayMillis() {
+        return Math.max(MIN_HEDGE_DELAY_MS, latency.percentile(HEDGE_PERCENTILE, DEFAULT_HEDGE_DELAY_MS));
+    }
+
+    /**
+     * The attempts of one search and which of them, if any, has won.
+     */
+    private class Race {
+        private final SearchSink downstream;
+        private final CompletableFuture<List<FlightCrawler.FlightInfo>> outcome = new CompletableFuture<>();
+        private final List<Attempt> attempts = new ArrayList<>();
+        private Attempt winner;
+        private int running;
+        private Exception failure;
+
+        Race(SearchSink downstream) {
+            this.downstream = downstream;
+        }
+
+        /**
+         * Start an attempt on the given lease, or on the next worker to free
+         * up (within the deadline) if lease is null.
+         */
+        synchronized void launch(String name, Crawl crawl, BrowserPool.Lease lease, Deadline deadline) {
+            Attempt attempt = new Attempt(this, name);
+            attempts.add(attempt);
+            running++;
+            ATTEMPT_EXECUTOR.execute(() -> {
+                List<FlightCrawler.FlightInfo> flights = List.of();
+                Exception error = null;
+                try (BrowserPool.Lease held = lease != null ? lease : pool.lease(deadline.remainingMillis())) {
+                    attempt.started = true;
+                    flights = held.run(page -> crawl.run(page, attempt), deadline);
+                } catch (Exception e) {
+                    error = e;
+                }
+                finished(attempt, flights, error);
+            });
+        }
+
+        /**
+         * Null if the search is not decided within the timeout.
+         */
+        List<FlightCrawler.FlightInfo> await(long timeoutMillis) throws Exception {
+            try {
+                return outcome.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return null;
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        /**
+         * Worth hedging: the primary got a worker but has not answered yet.
+         * A primary still waiting for a worker would only race its own hedge.
+         */
+        synchronized boolean shouldHedge() {
+            return attempts.get(0).started && winner == null && !outcome.isDone()
+                    && (downstream == null || !downstream.isCancelled());
+        }
+
+        /**
+         * Flights from an attempt. The first attempt to deliver any wins;
+         * only the winner's are kept.
+         */
+        synchronized boolean deliver(Attempt attempt, List<FlightCrawler.FlightInfo> batch) {
+            if (winner == null && !outcome.isDone()) {
+                winner = attempt;
+                latency.record(System.currentTimeMillis() - attempt.startMillis);
+                if (attempts.size() > 1) {
+                    System.out.println("Search answered by the " + attempt.name + " attempt.");
+                }
+            }
+            if (winner != attempt || outcome.isDone()) {
+                return false;
+            }
+            attempt.delivered.addAll(batch);
+            return true;
+        }
+
+        synchronized boolean isLost(Attempt attempt) {
+            return outcome.isDone() || winner != null && winner != attempt;
+        }
+
+        synchronized void finished(Attempt attempt, List<FlightCrawler.FlightInfo> flights, Exception error) {
+            running--;
+            if (winner == attempt) {
+                // Everything it delivered, even if it failed part way
+                outcome.complete(new ArrayList<>(attempt.delivered));
+                return;
+            }
+            if (error != null && failure == null) {
+                failure = error;
+            }
+            // An empty or failed attempt only decides the search if nothing else is left
+            if (running == 0 && winner == null) {
+                if (failure != null) {
+                    outcome.completeExceptionally(failure);
+                } else {
+                    outcome.complete(flights);
+                }
+            }
+        }
+
+        /**
+         * Past the deadline: stop every attempt and keep what the winner
+         * delivered.
+         */
+        synchronized List<FlightCrawler.FlightInfo> abandon() {
+            for (Attempt attempt : attempts) {
+                attempt.lost = true;
+            }
+            List<FlightCrawler.FlightInfo> delivered = winner == null ? List.of() : new ArrayList<>(winner.delivered);
+            outcome.complete(delivered);
+            return delivered;
+        }
+    }
+
+    /**
+     * Sink seen by one attempt's crawl.
+     */
+    private static class Attempt implements SearchSink {
+        private final Race race;
+        private final String name;
+        private final long startMillis = System.currentTimeMillis();
+        // Guarded by the race
+        private final List<FlightCrawler.FlightInfo> delivered = new ArrayList<>();
+        private volatile boolean started;
+        private volatile boolean lost;
+
+        Attempt(Race race, String name) {
+            this.race = race;
+            this.name = name;
+        }
+
+        @Override
+        public void onFlights(List<FlightCrawler.FlightInfo> batch) {
+            if (lost || !race.deliver(this, batch)) {
+                lost = true;
+                return;
+            }
+            if (race.downstream != null) {
+                race.downstream.onFlights(batch);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            if (lost) {
+                return true;
+            }
+            if (race.isLost(this)) {
+                lost = true;
+                return true;
+            }
+            return race.downstream != null && race.downstream.isCancelled();
+        }
+    }
+}
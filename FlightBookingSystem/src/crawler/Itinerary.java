@@ -0,0 +1,96 @@
+package crawler;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A self-transfer itinerary: one or more separately booked direct flights,
+ * each departing after the previous one lands plus a minimum connection time.
+ */
+public class Itinerary {
+
+    private final List<FlightData> legs;
+    private final long priceFen;
+    private final int durationMinutes;
+    private final int[] layoverMinutes;
+
+    Itinerary(List<FlightData> legs, long priceFen, int durationMinutes, int[] layoverMinutes) {
+        this.legs = Collections.unmodifiableList(new ArrayList<>(legs));
+        this.priceFen = priceFen;
+        this.durationMinutes = durationMinutes;
+        this.layoverMinutes = layoverMinutes;
+    }
+
+    public List<FlightData> getLegs() {
+        return legs;
+    }
+
+    public long getPriceFen() {
+        return priceFen;
+    }
+
+    public double getPrice() {
+        return priceFen / 100.0;
+    }
+
+    /**
+     * First departure to last arrival, by the local clock times as crawled.
+     */
+    public int getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    public int getTransferCount() {
+        return legs.size() - 1;
+    }
+
+    /**
+     * Minutes on the ground before leg i + 1.
+     */
+    public int getLayoverMinutes(int i) {
+        return layoverMinutes[i];
+    }
+
+    /**
+     * The whole trip as one FlightData (flight numbers joined with "/"), so it
+     * can be listed and sorted alongside direct fares.
+     */
+    public FlightData toFlightData() {
+        FlightData first = legs.get(0);
+        FlightData last = legs.get(legs.size() - 1);
+        List<String> flightNumbers = new ArrayList<>();
+        Set<String> airlines = new LinkedHashSet<>();
+        for (FlightData leg : legs) {
+            flightNumbers.add(leg.getFlightNumber());
+            airlines.add(leg.getAirline());
+        }
+        int dayOffset = (int) ChronoUnit.DAYS.between(LocalDate.parse(first.getDate()),
+                LocalDate.parse(last.getDate())) + last.getArrivalDayOffset();
+        return new FlightData(String.join("/", flightNumbers), String.join("/", airlines), first.getDepartureTime(),
+                last.getArrivalTime(), getPrice(), first.getOrigin(), last.getDestination(), legs.size() > 1,
+                getTransferCount(), first.getDate(), dayOffset);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format("¥%.2f, %dh%02dm, %d transfer%s",
+                getPrice(), durationMinutes / 60, durationMinutes % 60, getTransferCount(),
+                getTransferCount() == 1 ? "" : "s"));
+        for (int i = 0; i < legs.size(); i++) {
+            FlightData leg = legs.get(i);
+            text.append(String.format("%n  %s %s %s→%s %s %s-%s ¥%.2f", leg.getDate(), leg.getFlightNumber(),
+                    leg.getOrigin(), leg.getDestination(), leg.getAirline(), leg.getDepartureTime(),
+                    leg.getArrivalTime() + (leg.getArrivalDayOffset() > 0 ? "+" + leg.getArrivalDayOffset() : ""),
+                    leg.getPrice()));
+            if (i < layoverMinutes.length) {
+                text.append(String.format("%n    layover %dh%02dm", layoverMinutes[i] / 60, layoverMinutes[i] % 60));
+            }
+        }
+        return text.toString();
+    }
+}
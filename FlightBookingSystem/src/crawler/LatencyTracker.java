@@ -0,0 +1,55 @@
+package crawler;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the most recent searches in a fixed-size ring, for
+ * percentile estimates (e.g. when to hedge a slow search).
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private final int minSamples;
+    private int count;
+    private int next;
+
+    /**
+     * @param window     how many recent samples are kept
+     * @param minSamples fewer samples than this give the fallback value
+     */
+    public LatencyTracker(int window, int minSamples) {
+        if (window < 1 || minSamples > window) {
+            throw new IllegalArgumentException("Bad window " + window + " / " + minSamples);
+        }
+        this.samples = new long[window];
+        this.minSamples = minSamples;
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of the recent samples, or the fallback until
+     * enough have been recorded.
+     *
+     * @param p percentile in (0, 1], e.g. 0.9
+     */
+    public synchronized long percentile(double p, long fallback) {
+        if (count < minSamples) {
+            return fallback;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(p * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+}
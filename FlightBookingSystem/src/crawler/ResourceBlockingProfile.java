@@ -0,0 +1,235 @@
+package crawler;
+
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Request;
+import com.microsoft.playwright.Route;
+import com.microsoft.playwright.options.Sizes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Request-routing profile for crawl contexts.
+ * Only resource types on the allow-list are fetched; everything else, plus any
+ * URL matching a blocked pattern (ads, trackers), is aborted before it leaves
+ * Chromium. URLs matching an always-allow pattern bypass both rules.
+ *
+ * The profile also keeps per-page traffic counters so every crawl can report
+ * how many bytes and how much time the blocking saved.
+ */
+public class ResourceBlockingProfile {
+
+    // Rough body sizes for types we never load, used until a real sample is seen
+    private static final Map<String, Long> DEFAULT_SIZE_ESTIMATES = new HashMap<>();
+
+    static {
+        DEFAULT_SIZE_ESTIMATES.put("image", 25_000L);
+        DEFAULT_SIZE_ESTIMATES.put("media", 200_000L);
+        DEFAULT_SIZE_ESTIMATES.put("font", 40_000L);
+        DEFAULT_SIZE_ESTIMATES.put("stylesheet", 30_000L);
+        DEFAULT_SIZE_ESTIMATES.put("script", 20_000L);
+        DEFAULT_SIZE_ESTIMATES.put("other", 5_000L);
+    }
+
+    private final Set<String> allowedResourceTypes;
+    private final List<String> blockedUrlPatterns;
+    private final List<String> alwaysAllowedUrlPatterns;
+
+    private final Map<Page, PageTraffic> trafficByPage = new ConcurrentHashMap<>();
+    // Running average body size per resource type: [count, totalBytes]
+    private final Map<String, long[]> observedSizes = new ConcurrentHashMap<>();
+
+    /**
+     * @param allowedResourceTypes     Playwright resource types to let through
+     *                                 (document, script, xhr, fetch, ...)
+     * @param blockedUrlPatterns       URL substrings that are always aborted
+     * @param alwaysAllowedUrlPatterns URL substrings that are never aborted
+     */
+    public ResourceBlockingProfile(Set<String> allowedResourceTypes, List<String> blockedUrlPatterns,
+            List<String> alwaysAllowedUrlPatterns) {
+        this.allowedResourceTypes = new HashSet<>(allowedResourceTypes);
+        this.blockedUrlPatterns = List.copyOf(blockedUrlPatterns);
+        this.alwaysAllowedUrlPatterns = List.copyOf(alwaysAllowedUrlPatterns);
+    }
+
+    /**
+     * Profile for Ctrip result pages: documents, scripts and data requests
+     * only, with common ad/analytics hosts blocked.
+     */
+    public static ResourceBlockingProfile defaultProfile() {
+        return new ResourceBlockingProfile(
+                new HashSet<>(Arrays.asList("document", "script", "xhr", "fetch", "other")),
+                Arrays.asList("google-analytics.com", "googletagmanager.com", "doubleclick.net",
+                        "hm.baidu.com", "cnzz.com", "/bf.gif", "/ubt/", "/monitor/"),
+                Arrays.asList("/search/api/"));
+    }
+
+    /**
+     * Install the routing rules on a crawl context.
+     */
+    public void apply(BrowserContext context) {
+        context.route(url -> true, this::handle);
+    }
+
+    /**
+     * Start counting traffic for a page. Call once when the page is created.
+     */
+    public void attach(Page page) {
+        trafficByPage.put(page, new PageTraffic());
+        page.onRequestFinished(request -> recordLoaded(page, request));
+        page.onClose(p -> trafficByPage.remove(p));
+    }
+
+    /**
+     * Reset the counters of a page before a new crawl starts on it.
+     */
+    public void begin(Page page) {
+        PageTraffic traffic = trafficByPage.get(page);
+        if (traffic != null) {
+            traffic.reset();
+        }
+    }
+
+    /**
+     * Finish a crawl on a page and return what was loaded and saved.
+     */
+    public Stats end(Page page) {
+        PageTraffic traffic = trafficByPage.get(page);
+        if (traffic == null) {
+            return new Stats(0, 0, 0, 0, 0, 0);
+        }
+        long elapsed = (System.nanoTime() - traffic.startNanos) / 1_000_000;
+        long savedBytes = 0;
+        int blockedRequests = 0;
+        for (Map.Entry<String, Integer> entry : traffic.blockedByType.entrySet()) {
+            savedBytes += estimatedSize(entry.getKey()) * entry.getValue();
+            blockedRequests += entry.getValue();
+        }
+        // Time saved is estimated from the page's own observed throughput
+        long savedMillis = traffic.loadedBytes > 0 ? savedBytes * elapsed / traffic.loadedBytes : 0;
+        return new Stats(traffic.loadedRequests, traffic.loadedBytes, blockedRequests, savedBytes, elapsed,
+                savedMillis);
+    }
+
+    private void handle(Route route) {
+        Request request = route.request();
+        String url = request.url();
+        String type = request.resourceType();
+
+        if (!matchesAny(url, alwaysAllowedUrlPatterns)
+                && (!allowedResourceTypes.contains(type) || matchesAny(url, blockedUrlPatterns))) {
+            PageTraffic traffic = trafficFor(request);
+            if (traffic != null) {
+                traffic.blockedByType.merge(type, 1, Integer::sum);
+            }
+            route.abort();
+            return;
+        }
+        route.resume();
+    }
+
+    private void recordLoaded(Page page, Request request) {
+        PageTraffic traffic = trafficByPage.get(page);
+        if (traffic == null) {
+            return;
+        }
+        try {
+            Sizes sizes = request.sizes();
+            long bytes = Math.max(0, sizes.responseBodySize) + Math.max(0, sizes.responseHeadersSize);
+            traffic.loadedBytes += bytes;
+            traffic.loadedRequests++;
+            observedSizes.compute(request.resourceType(), (type, sample) -> {
+                long[] s = sample == null ? new long[2] : sample;
+                s[0]++;
+                s[1] += Math.max(0, sizes.responseBodySize);
+                return s;
+            });
+        } catch (Exception ignored) {
+            // Request was from a page that already navigated away
+        }
+    }
+
+    private PageTraffic trafficFor(Request request) {
+        try {
+            return trafficByPage.get(request.frame().page());
+        } catch (Exception e) {
+            // Service-worker requests have no frame
+            return null;
+        }
+    }
+
+    private long estimatedSize(String type) {
+        long[] sample = observedSizes.get(type);
+        if (sample != null && sample[0] > 0) {
+            return sample[1] / sample[0];
+        }
+        return DEFAULT_SIZE_ESTIMATES.getOrDefault(type, DEFAULT_SIZE_ESTIMATES.get("other"));
+    }
+
+    private static boolean matchesAny(String url, List<String> patterns) {
+        for (String pattern : patterns) {
+            if (url.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Mutated only from the owning worker thread
+    private static class PageTraffic {
+        private final Map<String, Integer> blockedByType = new HashMap<>();
+        private long startNanos = System.nanoTime();
+        private long loadedBytes;
+        private int loadedRequests;
+
+        void reset() {
+            blockedByType.clear();
+            startNanos = System.nanoTime();
+            loadedBytes = 0;
+            loadedRequests = 0;
+        }
+    }
+
+    /**
+     * Traffic summary for one crawl on one page.
+     */
+    public static class Stats {
+        public final int loadedRequests;
+        public final long loadedBytes;
+        public final int blockedRequests;
+        public final long estimatedBytesSaved;
+        public final long elapsedMillis;
+        public final long estimatedMillisSaved;
+
+        public Stats(int loadedRequests, long loadedBytes, int blockedRequests, long estimatedBytesSaved,
+                long elapsedMillis, long estimatedMillisSaved) {
+            this.loadedRequests = loadedRequests;
+            this.loadedBytes = loadedBytes;
+            this.blockedRequests = blockedRequests;
+            this.estimatedBytesSaved = estimatedBytesSaved;
+            this.elapsedMillis = elapsedMillis;
+            this.estimatedMillisSaved = estimatedMillisSaved;
+        }
+
+        /**
+         * Totals of this and another summary, e.g. over all crawls of a pool.
+         */
+        public Stats plus(Stats other) {
+            return new Stats(loadedRequests + other.loadedRequests, loadedBytes + other.loadedBytes,
+                    blockedRequests + other.blockedRequests, estimatedBytesSaved + other.estimatedBytesSaved,
+                    elapsedMillis + other.elapsedMillis, estimatedMillisSaved + other.estimatedMillisSaved);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("loaded %d requests (%d KB) in %d ms, blocked %d requests (~%d KB, ~%d ms saved)",
+                    loadedRequests, loadedBytes / 1024, elapsedMillis, blockedRequests,
+                    estimatedBytesSaved / 1024, estimatedMillisSaved);
+        }
+    }
+}
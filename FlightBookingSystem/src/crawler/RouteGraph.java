@@ -0,0 +1,499 @@
+package crawler;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Flight network over stored fares, for self-transfer itineraries.
+ *
+ * Airports are nodes and every direct fare is a leg stamped with departure
+ * and arrival in absolute minutes (epoch day * 1440 + minute of day). Times
+ * are the local clock times as crawled; a connection compares two times at
+ * the same airport, so they are always comparable there. Legs are stored
+ * grouped by origin and sorted by departure (compressed sparse rows), so the
+ * onward flights after a landing are a binary search plus a contiguous scan.
+ *
+ * search() enumerates itineraries best first (A*): partial itineraries are
+ * ordered by price (or elapsed time) plus a lower bound for the rest of the
+ * trip, taken from a reverse Dijkstra over the cheapest fare / shortest flight
+ * between each airport pair. Partial itineraries ending in the same leg are
+ * expanded in cost order, and one is dropped once k cheaper ones visited no
+ * airport it avoids (every continuation of it then continues those too, for
+ * less), so the top k cost little more than the best one.
+ *
+ * Immutable once built; build a new graph to pick up newer fares.
+ */
+public class RouteGraph {
+
+    /**
+     * What "best" means for search().
+     */
+    public enum Objective {
+        CHEAPEST, FASTEST
+    }
+
+    public static final int DEFAULT_MAX_LEGS = 3;
+
+    private static final int MINUTES_PER_DAY = 1440;
+    // Self transfer: collect bags and check in again, more if a border is involved
+    private static final int DOMESTIC_CONNECTION_MINUTES = 90;
+    private static final int INTERNATIONAL_CONNECTION_MINUTES = 180;
+    private static final int MAX_LAYOVER_MINUTES = 24 * 60;
+    private static final long UNREACHABLE = Long.MAX_VALUE;
+
+    private final FareBatch fares;
+    // Dense node ids: nodeOf[packed code] -> node (-1 if absent), codeOf[node] -> packed code
+    private final int[] nodeOf = new int[AirportCode.SPACE];
+    private final int[] codeOf;
+    private final boolean[] domestic;
+
+    // Legs of node n are firstLeg[n] .. firstLeg[n + 1] - 1, by departure
+    private final int[] firstLeg;
+    private final int[] legRow;
+    private final int[] legOrigin;
+    private final int[] legDestination;
+    private final int[] legDeparture;
+    private final int[] legArrival;
+    private final long[] legPrice;
+
+    // Reverse pair graph for the lower bounds: into node n from inboundFrom[i],
+    // i in firstInbound[n] .. firstInbound[n + 1] - 1
+    private final int[] firstInbound;
+    private final int[] inboundFrom;
+    private final long[] inboundPrice;
+    private final int[] inboundMinutes;
+
+    private RouteGraph(FareBatch fares) {
+        this.fares = fares;
+        Arrays.fill(nodeOf, -1);
+        int[] usable = fares.filter(RouteGraph::isUsableLeg);
+
+        int[] codes = new int[AirportCode.SPACE];
+        int nodes = 0;
+        for (int row : usable) {
+            int origin = fares.originCode(row);
+            int destination = fares.destinationCode(row);
+            if (nodeOf[origin] < 0) {
+                nodeOf[origin] = nodes;
+                codes[nodes++] = origin;
+            }
+            if (nodeOf[destination] < 0) {
+                nodeOf[destination] = nodes;
+                codes[nodes++] = destination;
+            }
+        }
+        codeOf = Arrays.copyOf(codes, nodes);
+        domestic = new boolean[nodes];
+        for (int n = 0; n < nodes; n++) {
+            domestic[n] = CityCodeMapper.isDomestic(codeOf[n]);
+        }
+
+        // Bucket legs by origin, then sort each bucket by (departure, row)
+        firstLeg = new int[nodes + 1];
+        for (int row : usable) {
+            firstLeg[nodeOf[fares.originCode(row)] + 1]++;
+        }
+        for (int n = 0; n < nodes; n++) {
+            firstLeg[n + 1] += firstLeg[n];
+        }
+        long[] slots = new long[usable.length];
+        int[] fill = Arrays.copyOf(firstLeg, nodes);
+        for (int row : usable) {
+            slots[fill[nodeOf[fares.originCode(row)]]++] = ((long) departureOf(fares, row) << 32) | row;
+        }
+        for (int n = 0; n < nodes; n++) {
+            Arrays.sort(slots, firstLeg[n], firstLeg[n + 1]);
+        }
+
+        int legs = usable.length;
+        legRow = new int[legs];
+        legOrigin = new int[legs];
+        legDestination = new int[legs];
+        legDeparture = new int[legs];
+        legArrival = new int[legs];
+        legPrice = new long[legs];
+        for (int n = 0; n < nodes; n++) {
+            for (int i = firstLeg[n]; i < firstLeg[n + 1]; i++) {
+                int row = (int) slots[i];
+                legRow[i] = row;
+                legOrigin[i] = n;
+                legDestination[i] = nodeOf[fares.destinationCode(row)];
+                legDeparture[i] = (int) (slots[i] >>> 32);
+                legArrival[i] = arrivalOf(fares, row);
+                legPrice[i] = fares.priceFen(row);
+            }
+        }
+
+        // Cheapest fare and shortest flight per airport pair, then reversed
+        int[] pairFrom = new int[legs];
+        int[] pairTo = new int[legs];
+        long[] pairPrice = new long[legs];
+        int[] pairMinutes = new int[legs];
+        int pairs = 0;
+        long[] bestPrice = new long[nodes];
+        int[] bestMinutes = new int[nodes];
+        int[] touched = new int[nodes];
+        Arrays.fill(bestPrice, UNREACHABLE);
+        Arrays.fill(bestMinutes, Integer.MAX_VALUE);
+        for (int n = 0; n < nodes; n++) {
+            int count = 0;
+            for (int i = firstLeg[n]; i < firstLeg[n + 1]; i++) {
+                int v = legDestination[i];
+                if (bestPrice[v] == UNREACHABLE) {
+                    touched[count++] = v;
+                }
+                bestPrice[v] = Math.min(bestPrice[v], legPrice[i]);
+                bestMinutes[v] = Math.min(bestMinutes[v], Math.max(0, legArrival[i] - legDeparture[i]));
+            }
+            for (int j = 0; j < count; j++) {
+                int v = touched[j];
+                pairFrom[pairs] = n;
+                pairTo[pairs] = v;
+                pairPrice[pairs] = bestPrice[v];
+                pairMinutes[pairs] = bestMinutes[v];
+                pairs++;
+                bestPrice[v] = UNREACHABLE;
+                bestMinutes[v] = Integer.MAX_VALUE;
+            }
+        }
+        firstInbound = new int[nodes + 1];
+        for (int p = 0; p < pairs; p++) {
+            firstInbound[pairTo[p] + 1]++;
+        }
+        for (int n = 0; n < nodes; n++) {
+            firstInbound[n + 1] += firstInbound[n];
+        }
+        inboundFrom = new int[pairs];
+        inboundPrice = new long[pairs];
+        inboundMinutes = new int[pairs];
+        fill = Arrays.copyOf(firstInbound, nodes);
+        for (int p = 0; p < pairs; p++) {
+            int slot = fill[pairTo[p]]++;
+            inboundFrom[slot] = pairFrom[p];
+            inboundPrice[slot] = pairPrice[p];
+            inboundMinutes[slot] = pairMinutes[p];
+        }
+    }
+
+    /**
+     * Graph over the direct fares of a batch (rows with transfers, joined or
+     * unknown flight numbers, unknown times or no price are ignored).
+     */
+    public static RouteGraph build(FareBatch fares) {
+        return new RouteGraph(fares);
+    }
+
+    public int airportCount() {
+        return codeOf.length;
+    }
+
+    public int legCount() {
+        return legRow.length;
+    }
+
+    public List<Itinerary> search(String origin, String destination, LocalDate date, Objective objective, int k) {
+        return search(origin, destination, date, objective, k, DEFAULT_MAX_LEGS);
+    }
+
+    /**
+     * Up to k itineraries from origin to destination whose first flight
+     * departs on date, best first. Connections respect a minimum connection
+     * time (longer when international) and a 24 hour maximum layover, and no
+     * airport is visited twice.
+     *
+     * @param origin      city code, e.g. "SHA"
+     * @param destination city code
+     * @param maxLegs     most flights per itinerary (1 = direct only)
+     */
+    public List<Itinerary> search(String origin, String destination, LocalDate date, Objective objective, int k,
+            int maxLegs) {
+        int from = node(origin);
+        int to = node(destination);
+        if (from < 0 || to < 0 || from == to || k <= 0 || maxLegs <= 0) {
+            return Collections.emptyList();
+        }
+        long[] bound = lowerBounds(to, objective);
+        if (bound[from] == UNREACHABLE) {
+            return Collections.emptyList();
+        }
+
+        Labels labels = new Labels();
+        LongIntHeap open = new LongIntHeap();
+        // Labels expanded per leg, chained through expandedBefore
+        int[] lastExpanded = new int[legRow.length];
+        Arrays.fill(lastExpanded, -1);
+
+        int dayStart = (int) date.toEpochDay() * MINUTES_PER_DAY;
+        for (int i = firstDeparture(from, dayStart); i < firstLeg[from + 1]
+                && legDeparture[i] < dayStart + MINUTES_PER_DAY; i++) {
+            int v = legDestination[i];
+            if (bound[v] == UNREACHABLE) {
+                continue;
+            }
+            long cost = objective == Objective.CHEAPEST ? legPrice[i] : legArrival[i] - legDeparture[i];
+            open.push(cost + bound[v], labels.add(i, -1, cost, legDeparture[i], 1));
+        }
+
+        List<Itinerary> results = new ArrayList<>();
+        while (!open.isEmpty() && results.size() < k) {
+            int label = open.pop();
+            int leg = labels.leg[label];
+            // Labels of one leg pop in cost order: once k cheaper ones visited no airport
+            // this one avoids, every continuation of this one is beaten k times
+            if (isDominated(labels, lastExpanded[leg], label, k)) {
+                continue;
+            }
+            labels.expandedBefore[label] = lastExpanded[leg];
+            lastExpanded[leg] = label;
+            int at = legDestination[leg];
+            if (at == to) {
+                results.add(itinerary(labels, label));
+                continue;
+            }
+            if (labels.legs[label] >= maxLegs) {
+                continue;
+            }
+            int arrival = legArrival[leg];
+            int latest = arrival + MAX_LAYOVER_MINUTES;
+            for (int next = firstDeparture(at, arrival + DOMESTIC_CONNECTION_MINUTES); next < firstLeg[at + 1]
+                    && legDeparture[next] <= latest; next++) {
+                int v = legDestination[next];
+                if (bound[v] == UNREACHABLE) {
+                    continue;
+                }
+                boolean domesticConnection = domestic[legOrigin[leg]] && domestic[at] && domestic[v];
+                if (!domesticConnection && legDeparture[next] < arrival + INTERNATIONAL_CONNECTION_MINUTES) {
+                    continue;
+                }
+                if (visits(labels, label, v)) {
+                    continue;
+                }
+                long cost = objective == Objective.CHEAPEST ? labels.cost[label] + legPrice[next]
+                        : legArrival[next] - labels.start[label];
+                open.push(cost + bound[v],
+                        labels.add(next, label, cost, labels.start[label], labels.legs[label] + 1));
+            }
+        }
+        return results;
+    }
+
+    private int node(String code) {
+        int packed = AirportCode.pack(code);
+        return AirportCode.isValid(packed) ? nodeOf[packed] : -1;
+    }
+
+    /**
+     * Least possible remaining price (or flight time) from every node to the
+     * destination, ignoring schedules.
+     */
+    private long[] lowerBounds(int to, Objective objective) {
+        long[] distance = new long[codeOf.length];
+        Arrays.fill(distance, UNREACHABLE);
+        distance[to] = 0;
+        LongIntHeap heap = new LongIntHeap();
+        heap.push(0, to);
+        while (!heap.isEmpty()) {
+            long d = heap.peekKey();
+            int n = heap.pop();
+            if (d > distance[n]) {
+                continue;
+            }
+            for (int i = firstInbound[n]; i < firstInbound[n + 1]; i++) {
+                int u = inboundFrom[i];
+                long candidate = d + (objective == Objective.CHEAPEST ? inboundPrice[i] : inboundMinutes[i]);
+                if (candidate < distance[u]) {
+                    distance[u] = candidate;
+                    heap.push(candidate, u);
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * First leg of the node departing at or after the given minute.
+     */
+    private int firstDeparture(int node, int minute) {
+        int low = firstLeg[node];
+        int high = firstLeg[node + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (legDeparture[mid] < minute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Whether at least k of the expanded labels chained from first visited
+     * only airports that label visits too.
+     */
+    private boolean isDominated(Labels labels, int first, int label, int k) {
+        int count = 0;
+        for (int l = first; l >= 0; l = labels.expandedBefore[l]) {
+            if (visitsAll(labels, label, l) && ++count >= k) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean visitsAll(Labels labels, int label, int other) {
+        for (int l = labels.parent[other]; l >= 0; l = labels.parent[l]) {
+            if (!visits(labels, label, legOrigin[labels.leg[l]])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean visits(Labels labels, int label, int node) {
+        for (int l = label; l >= 0; l = labels.parent[l]) {
+            if (legOrigin[labels.leg[l]] == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Itinerary itinerary(Labels labels, int label) {
+        int count = labels.legs[label];
+        int[] legs = new int[count];
+        for (int l = label, i = count - 1; l >= 0; l = labels.parent[l], i--) {
+            legs[i] = labels.leg[l];
+        }
+        List<FlightData> flights = new ArrayList<>(count);
+        int[] layovers = new int[count - 1];
+        long price = 0;
+        for (int i = 0; i < count; i++) {
+            flights.add(fares.toFlightData(legRow[legs[i]]));
+            price += legPrice[legs[i]];
+            if (i > 0) {
+                layovers[i - 1] = legDeparture[legs[i]] - legArrival[legs[i - 1]];
+            }
+        }
+        return new Itinerary(flights, price, legArrival[legs[count - 1]] - legDeparture[legs[0]], layovers);
+    }
+
+    private static boolean isUsableLeg(FareBatch batch, int row) {
+        return batch.transferCount(row) == 0
+                && batch.isSingleFlight(row)
+                && AirportCode.isValid(batch.originCode(row))
+                && AirportCode.isValid(batch.destinationCode(row))
+                && batch.originCode(row) != batch.destinationCode(row)
+                && batch.epochDay(row) >= 0
+                && batch.departureMinute(row) >= 0
+                && batch.arrivalMinute(row) >= 0
+                && batch.priceFen(row) > 0;
+    }
+
+    private static int departureOf(FareBatch batch, int row) {
+        return batch.epochDay(row) * MINUTES_PER_DAY + batch.departureMinute(row);
+    }
+
+    private static int arrivalOf(FareBatch batch, int row) {
+        return (batch.epochDay(row) + batch.arrivalDayOffset(row)) * MINUTES_PER_DAY + batch.arrivalMinute(row);
+    }
+
+    /**
+     * Partial itineraries as parallel arrays: last leg, previous label (-1 for
+     * the first leg), cost so far, first departure, number of legs and the
+     * label expanded on the same leg before this one (-1 if none).
+     */
+    private static class Labels {
+        int[] leg = new int[256];
+        int[] parent = new int[256];
+        long[] cost = new long[256];
+        int[] start = new int[256];
+        int[] legs = new int[256];
+        int[] expandedBefore = new int[256];
+        int size;
+
+        int add(int legIndex, int parentLabel, long costSoFar, int firstDeparture, int legCount) {
+            if (size == leg.length) {
+                int capacity = size * 2;
+                leg = Arrays.copyOf(leg, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                cost = Arrays.copyOf(cost, capacity);
+                start = Arrays.copyOf(start, capacity);
+                legs = Arrays.copyOf(legs, capacity);
+                expandedBefore = Arrays.copyOf(expandedBefore, capacity);
+            }
+            leg[size] = legIndex;
+            parent[size] = parentLabel;
+            cost[size] = costSoFar;
+            start[size] = firstDeparture;
+            legs[size] = legCount;
+            expandedBefore[size] = -1;
+            return size++;
+        }
+    }
+
+    /**
+     * Binary min-heap of (long key, int value) pairs without boxing.
+     */
+    private static class LongIntHeap {
+        private long[] keys = new long[256];
+        private int[] values = new int[256];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(long key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        long peekKey() {
+            return keys[0];
+        }
+
+        int pop() {
+            int top = values[0];
+            size--;
+            long key = keys[size];
+            int value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package crawler;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Console benchmark for RouteGraph: builds a synthetic network of direct
+ * fares between the known cities (a few hubs carry most of the traffic, as
+ * in the real data) and times top-k itinerary queries between random pairs.
+ *
+ * Usage: RouteGraphBenchmark [legs] [queries] [k]
+ */
+public class RouteGraphBenchmark {
+
+    private static final int DAYS = 30;
+    private static final int HUBS = 12;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) {
+        int legs = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        List<String> cities = new ArrayList<>();
+        for (String code : CityCodeMapper.getDomesticMappings().keySet()) {
+            if (AirportCode.pack(code) >= 0 && !cities.contains(code.toUpperCase())) {
+                cities.add(code.toUpperCase());
+            }
+        }
+        for (String code : CityCodeMapper.getInternationalMappings().keySet()) {
+            if (AirportCode.pack(code) >= 0 && !cities.contains(code.toUpperCase())) {
+                cities.add(code.toUpperCase());
+            }
+        }
+        LocalDate firstDay = LocalDate.now().plusDays(1);
+        Random random = new Random(SEED);
+
+        FareBatch fares = new FareBatch(legs);
+        for (int i = 0; i < legs; i++) {
+            // Half of all flights touch a hub
+            String origin = random.nextBoolean() ? cities.get(random.nextInt(HUBS)) : pick(cities, random);
+            String destination = pick(cities, random);
+            if (origin.equals(destination)) {
+                destination = cities.get((cities.indexOf(destination) + 1) % cities.size());
+            }
+            int departure = 360 + random.nextInt(17 * 60);
+            int arrival = departure + 60 + random.nextInt(300);
+            String date = firstDay.plusDays(random.nextInt(DAYS)).toString();
+            fares.add((300 + random.nextInt(2700)) * 100L, departure, arrival % 1440, arrival / 1440, 0, origin,
+                    destination, date, "Airline " + random.nextInt(20), "MU" + (1000 + random.nextInt(9000)));
+        }
+
+        long start = System.nanoTime();
+        RouteGraph graph = RouteGraph.build(fares);
+        System.out.printf("Built graph: %d airports, %d legs in %.1f ms%n", graph.airportCount(), graph.legCount(),
+                (System.nanoTime() - start) / 1e6);
+
+        for (RouteGraph.Objective objective : RouteGraph.Objective.values()) {
+            // Warm up, then measure
+            run(graph, cities, firstDay, objective, k, queries, new Random(SEED));
+            long[] nanos = run(graph, cities, firstDay, objective, k, queries, new Random(SEED + 1));
+            Arrays.sort(nanos);
+            System.out.printf("%-8s top %d: median %.2f ms, p99 %.2f ms, max %.2f ms%n", objective, k,
+                    nanos[nanos.length / 2] / 1e6, nanos[nanos.length * 99 / 100] / 1e6,
+                    nanos[nanos.length - 1] / 1e6);
+        }
+
+        List<Itinerary> sample = graph.search(cities.get(0), cities.get(cities.size() - 1), firstDay.plusDays(3),
+                RouteGraph.Objective.CHEAPEST, 3);
+        System.out.println("Sample: " + cities.get(0) + " -> " + cities.get(cities.size() - 1));
+        for (Itinerary itinerary : sample) {
+            System.out.println(itinerary);
+        }
+    }
+
+    private static long[] run(RouteGraph graph, List<String> cities, LocalDate firstDay,
+            RouteGraph.Objective objective, int k, int queries, Random random) {
+        long[] nanos = new long[queries];
+        for (int q = 0; q < queries; q++) {
+            String origin = pick(cities, random);
+            String destination = pick(cities, random);
+            LocalDate date = firstDay.plusDays(random.nextInt(DAYS - 2));
+            long start = System.nanoTime();
+            graph.search(origin, destination, date, objective, k);
+            nanos[q] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    private static String pick(List<String> cities, Random random) {
+        return cities.get(random.nextInt(cities.size()));
+    }
+}
@@ -0,0 +1,188 @@
+package crawler;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks RouteGraph.search against a brute-force enumeration of every
+ * itinerary on small random networks: the top k prices (or durations) must
+ * match for every airport pair, objective, leg limit and k. With k as small
+ * as 1, the cheapest partial itinerary over a leg is often a dead end (it
+ * used up the leg limit, or already visited the only airport onward), which
+ * must not hide a dearer one that does go on. The networks also include
+ * connecting rows that the crawler reports without a transfer count (joined
+ * flight numbers), which must never be used as legs. Exits with status 1 on
+ * a mismatch.
+ *
+ * Usage: RouteGraphCheck [networks] [legs]
+ */
+public class RouteGraphCheck {
+
+    private static final String[] CITIES = { "SHA", "BJS", "CAN", "CTU", "TYO", "SEL" };
+    private static final int DAYS = 3;
+    private static final int MINUTES_PER_DAY = 1440;
+    private static final int[] TOP = { 1, 2, 5 };
+    private static final long SEED = 7;
+
+    private static int failures;
+    private static int queries;
+
+    public static void main(String[] args) {
+        int networks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int legs = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        LocalDate firstDay = LocalDate.of(2026, 11, 1);
+        Random random = new Random(SEED);
+
+        for (int network = 0; network < networks && failures < 20; network++) {
+            FareBatch fares = new FareBatch(legs);
+            List<Leg> direct = new ArrayList<>();
+            for (int i = 0; i < legs; i++) {
+                int origin = random.nextInt(CITIES.length);
+                int destination = (origin + 1 + random.nextInt(CITIES.length - 1)) % CITIES.length;
+                int day = random.nextInt(DAYS);
+                int departure = 360 + random.nextInt(16 * 60);
+                int arrival = departure + 60 + random.nextInt(240);
+                long price = (300 + random.nextInt(1200)) * 100L;
+                String date = firstDay.plusDays(day).toString();
+                if (random.nextInt(10) == 0) {
+                    // A connecting flight listed without a transfer count
+                    fares.add(price / 4, departure, arrival % MINUTES_PER_DAY, arrival / MINUTES_PER_DAY, 0,
+                            CITIES[origin], CITIES[destination], date, "Airline", "MU" + (5000 + i) + "/MU2101");
+                    continue;
+                }
+                fares.add(price, departure, arrival % MINUTES_PER_DAY, arrival / MINUTES_PER_DAY, 0, CITIES[origin],
+                        CITIES[destination], date, "Airline", "MU" + (1000 + i));
+                int start = (int) firstDay.plusDays(day).toEpochDay() * MINUTES_PER_DAY + departure;
+                direct.add(new Leg(origin, destination, start, start + arrival - departure, price));
+            }
+            RouteGraph graph = RouteGraph.build(fares);
+            check("legs in network " + network, graph.legCount(), direct.size());
+
+            for (int from = 0; from < CITIES.length; from++) {
+                for (int to = 0; to < CITIES.length; to++) {
+                    if (from == to) {
+                        continue;
+                    }
+                    for (int day = 0; day < DAYS; day++) {
+                        for (RouteGraph.Objective objective : RouteGraph.Objective.values()) {
+                            for (int maxLegs = 1; maxLegs <= 3; maxLegs++) {
+                                for (int k : TOP) {
+                                    compare(graph, direct, from, to, firstDay.plusDays(day), objective, k,
+                                            maxLegs);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " of " + queries + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All " + queries + " route graph checks passed.");
+    }
+
+    private static void compare(RouteGraph graph, List<Leg> direct, int from, int to, LocalDate date,
+            RouteGraph.Objective objective, int k, int maxLegs) {
+        List<Long> expected = new ArrayList<>();
+        int dayStart = (int) date.toEpochDay() * MINUTES_PER_DAY;
+        for (Leg first : direct) {
+            if (first.origin == from && first.departure >= dayStart && first.departure < dayStart + MINUTES_PER_DAY) {
+                List<Leg> path = new ArrayList<>();
+                path.add(first);
+                enumerate(direct, path, to, objective, maxLegs, expected);
+            }
+        }
+        Collections.sort(expected);
+        expected = new ArrayList<>(expected.subList(0, Math.min(k, expected.size())));
+
+        List<Long> actual = new ArrayList<>();
+        for (Itinerary itinerary : graph.search(CITIES[from], CITIES[to], date, objective, k, maxLegs)) {
+            actual.add(objective == RouteGraph.Objective.CHEAPEST ? itinerary.getPriceFen()
+                    : (long) itinerary.getDurationMinutes());
+            for (FlightData leg : itinerary.getLegs()) {
+                if (leg.getFlightNumber().contains("/")) {
+                    check("joined flight number used as a leg", leg.getFlightNumber(), "a single flight");
+                }
+            }
+        }
+        queries++;
+        check(CITIES[from] + "-" + CITIES[to] + " " + date + " " + objective + " top " + k + " max " + maxLegs
+                + " legs", actual, expected);
+    }
+
+    /**
+     * Every itinerary extending path that ends at to, under the same
+     * connection rules as RouteGraph.
+     */
+    private static void enumerate(List<Leg> direct, List<Leg> path, int to, RouteGraph.Objective objective,
+            int maxLegs, List<Long> costs) {
+        Leg last = path.get(path.size() - 1);
+        if (last.destination == to) {
+            long cost = 0;
+            for (Leg leg : path) {
+                cost += leg.price;
+            }
+            costs.add(objective == RouteGraph.Objective.CHEAPEST ? cost : last.arrival - path.get(0).departure);
+            return;
+        }
+        if (path.size() >= maxLegs) {
+            return;
+        }
+        for (Leg next : direct) {
+            if (next.origin != last.destination || visits(path, next.destination)) {
+                continue;
+            }
+            boolean domesticConnection = isDomestic(last.origin) && isDomestic(last.destination)
+                    && isDomestic(next.destination);
+            int connection = domesticConnection ? 90 : 180;
+            if (next.departure < last.arrival + connection || next.departure > last.arrival + MINUTES_PER_DAY) {
+                continue;
+            }
+            path.add(next);
+            enumerate(direct, path, to, objective, maxLegs, costs);
+            path.remove(path.size() - 1);
+        }
+    }
+
+    private static boolean visits(List<Leg> path, int city) {
+        for (Leg leg : path) {
+            if (leg.origin == city) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDomestic(int city) {
+        return CityCodeMapper.isDomestic(AirportCode.pack(CITIES[city]));
+    }
+
+    private static void check(String what, Object actual, Object expected) {
+        if (!expected.equals(actual)) {
+            System.out.println("FAIL " + what + ": expected " + expected + ", got " + actual);
+            failures++;
+        }
+    }
+
+    private static class Leg {
+        final int origin;
+        final int destination;
+        final int departure;
+        final int arrival;
+        final long price;
+
+        Leg(int origin, int destination, int departure, int arrival, long price) {
+            this.origin = origin;
+            this.destination = destination;
+            this.departure = departure;
+            this.arrival = arrival;
+            this.price = price;
+        }
+    }
+}
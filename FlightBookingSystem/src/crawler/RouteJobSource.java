@@ -0,0 +1,217 @@
+package crawler;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy enumeration of route/date crawl jobs.
+ *
+ * Jobs are never materialized up front: global index i maps to
+ * (day = i / C^2, origin = (i / C) % C, destination = i % C) over the sorted
+ * code list, so nearer dates come first and any position can be computed
+ * directly. Sources are immutable; shard(), allowRoutes() and startingAt()
+ * return narrowed copies.
+ *
+ * Sharding is by global index modulo shard count, so N crawler processes
+ * given the same codes and dates split the work deterministically without
+ * coordinating.
+ */
+public class RouteJobSource implements Iterable<CrawlJob> {
+
+    private final List<String> codes;
+    private final LocalDate firstDate;
+    private final int days;
+    private final int shardIndex;
+    private final int shardCount;
+    private final Set<String> allowedRoutes;
+    private final long startIndex;
+
+    public RouteJobSource(Collection<String> codes, LocalDate firstDate, int days) {
+        this(sortedLowerCase(codes), firstDate, days, 0, 1, null, 0);
+    }
+
+    private RouteJobSource(List<String> codes, LocalDate firstDate, int days, int shardIndex, int shardCount,
+            Set<String> allowedRoutes, long startIndex) {
+        this.codes = codes;
+        this.firstDate = firstDate;
+        this.days = days;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.allowedRoutes = allowedRoutes;
+        this.startIndex = startIndex;
+    }
+
+    /**
+     * Keep only jobs whose global index % count == index.
+     */
+    public RouteJobSource shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        return new RouteJobSource(codes, firstDate, days, index, count, allowedRoutes, startIndex);
+    }
+
+    /**
+     * Keep only the listed routes, written "sha-ctu" (case insensitive).
+     */
+    public RouteJobSource allowRoutes(Collection<String> routes) {
+        Set<String> allowed = new HashSet<>();
+        for (String route : routes) {
+            allowed.add(route.trim().toLowerCase());
+        }
+        return new RouteJobSource(codes, firstDate, days, shardIndex, shardCount,
+                Collections.unmodifiableSet(allowed), startIndex);
+    }
+
+    /**
+     * Resume: skip every job with a global index below the offset.
+     */
+    public RouteJobSource startingAt(long globalIndex) {
+        return new RouteJobSource(codes, firstDate, days, shardIndex, shardCount, allowedRoutes,
+                Math.max(0, globalIndex));
+    }
+
+    /**
+     * Size of the unfiltered index space (codes^2 * days).
+     */
+    public long indexSpace() {
+        return (long) codes.size() * codes.size() * days;
+    }
+
+    @Override
+    public JobIterator iterator() {
+        return new JobIterator(startIndex, indexSpace());
+    }
+
+    @Override
+    public Spliterator<CrawlJob> spliterator() {
+        return new JobSpliterator(startIndex, indexSpace());
+    }
+
+    public Stream<CrawlJob> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Job at a global index, or null if the index is filtered out.
+     */
+    private CrawlJob jobAt(long index) {
+        if (index % shardCount != shardIndex) {
+            return null;
+        }
+        int c = codes.size();
+        int day = (int) (index / ((long) c * c));
+        String origin = codes.get((int) ((index / c) % c));
+        String destination = codes.get((int) (index % c));
+        if (origin.equals(destination)) {
+            return null;
+        }
+        if (allowedRoutes != null && !allowedRoutes.contains(origin + "-" + destination)) {
+            return null;
+        }
+        String date = firstDate.plusDays(day).toString();
+        return new CrawlJob(origin, destination, date,
+                FlightRouteGenerator.buildUrl(origin, destination, date), CrawlJob.priorityForDate(date));
+    }
+
+    private static List<String> sortedLowerCase(Collection<String> codes) {
+        Set<String> unique = new HashSet<>();
+        for (String code : codes) {
+            unique.add(code.toLowerCase());
+        }
+        List<String> sorted = new ArrayList<>(unique);
+        Collections.sort(sorted);
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Iterator over the global index range [start, end), skipping indexes
+     * outside the shard or route filter.
+     */
+    public class JobIterator implements Iterator<CrawlJob> {
+        private long position;
+        private final long end;
+        private CrawlJob next;
+
+        JobIterator(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && position < end) {
+                next = jobAt(position++);
+            }
+            return next != null;
+        }
+
+        @Override
+        public CrawlJob next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CrawlJob job = next;
+            next = null;
+            return job;
+        }
+    }
+
+    /**
+     * Splits the index range in halves for parallel streams.
+     */
+    private class JobSpliterator implements Spliterator<CrawlJob> {
+        private long position;
+        private final long end;
+
+        JobSpliterator(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super CrawlJob> action) {
+            while (position < end) {
+                CrawlJob job = jobAt(position++);
+                if (job != null) {
+                    action.accept(job);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<CrawlJob> trySplit() {
+            long remaining = end - position;
+            if (remaining < 1024) {
+                return null;
+            }
+            long middle = position + remaining / 2;
+            JobSpliterator prefix = new JobSpliterator(position, middle);
+            position = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (end - position) / shardCount;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package crawler;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * In-memory cache of search results keyed on resolved city codes and date
+ * (packed into one long, see AirportCode.routeDateKey).
+ * - TTL depends on days to departure: near-term fares move fast, far-out ones
+ * barely change.
+ * - Memory is bounded by the total number of cached flights; the least
+ * recently used routes are evicted first.
+ * - Concurrent identical searches are coalesced so only one crawl runs; a
+ * partial result (a cancelled crawl, or one cut short by its deadline) still
+ * answers all of them, but is not cached.
+ * - Past its TTL an entry can still be served stale while a background crawl
+ * revalidates it.
+ */
+public class SearchCache {
+
+    // A stale entry stays servable (while refreshing) for this many TTLs past its freshness
+    private static final int STALE_WINDOW_FACTOR = 12;
+
+    // Background revalidation crawls, one virtual thread each; the browser pool
+    // bounds real concurrency
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("search-cache-refresh-", 0).factory());
+
+    private final int maxFlights;
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Long, CompletableFuture<Loaded>> inFlight = new ConcurrentHashMap<>();
+    private int cachedFlights;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param maxFlights upper bound on flights held across all cached searches
+     */
+    public SearchCache(int maxFlights) {
+        this.maxFlights = maxFlights;
+    }
+
+    /**
+     * Return a fresh cached result for the route/date, or run the loader once
+     * for all concurrent callers asking for the same key. Empty results are
+     * not cached because they usually mean the crawl failed, and neither are
+     * partial ones.
+     */
+    public List<FlightCrawler.FlightInfo> get(String originCode, String destinationCode, String date,
+            Supplier<Loaded> loader) {
+        return get(originCode, destinationCode, date, loader, null);
+    }
+
+    /**
+     * Stale-while-revalidate lookup. A result past its freshness window but
+     * still inside the stale window is returned immediately; a background
+     * crawl refreshes it and hands the new list to onRefresh (unless it came
+     * back partial, which would replace a full list with less). With a null
+     * onRefresh, stale entries are treated as misses. Searches that cannot be
+     * keyed (not a 3-letter code or an ISO date) bypass the cache.
+     */
+    public List<FlightCrawler.FlightInfo> get(String originCode, String destinationCode, String date,
+            Supplier<Loaded> loader, Consumer<List<FlightCrawler.FlightInfo>> onRefresh) {
+        long key = key(originCode, destinationCode, date);
+        if (key < 0) {
+            misses.incrementAndGet();
+            return new ArrayList<>(loader.get().flights);
+        }
+
+        Entry entry = lookup(key);
+        if (entry != null && entry.isFresh(System.currentTimeMillis())) {
+            hits.incrementAndGet();
+            return new ArrayList<>(entry.flights);
+        }
+
+        if (entry != null && onRefresh != null) {
+            staleHits.incrementAndGet();
+            load(key, date, loader, true).thenAccept(refreshed -> {
+                if (refreshed.complete && !refreshed.flights.isEmpty()) {
+                    onRefresh.accept(new ArrayList<>(refreshed.flights));
+                }
+            });
+            return new ArrayList<>(entry.flights);
+        }
+
+        try {
+            return new ArrayList<>(load(key, date, loader, false).join().flights);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Single-flight load: joins a crawl already running for the key, otherwise
+     * starts one (inline, or on the refresh executor when async).
+     */
+    private CompletableFuture<Loaded> load(long key, String date, Supplier<Loaded> loader, boolean async) {
+        CompletableFuture<Loaded> mine = new CompletableFuture<>();
+        CompletableFuture<Loaded> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+
+        Runnable crawl = () -> {
+            try {
+                // Another caller may have refreshed the entry before we claimed the key
+                Entry current = lookup(key);
+                if (current != null && current.isFresh(System.currentTimeMillis())) {
+                    mine.complete(Loaded.complete(current.flights));
+                    return;
+                }
+
+                if (async) {
+                    refreshes.incrementAndGet();
+                } else {
+                    misses.incrementAndGet();
+                }
+                Loaded result = loader.get();
+                if (result.complete && !result.flights.isEmpty()) {
+                    put(key, result.flights, date);
+                }
+                mine.complete(result);
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        };
+
+        if (async) {
+            REFRESH_EXECUTOR.execute(crawl);
+        } else {
+            crawl.run();
+        }
+        return mine;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        cachedFlights = 0;
+    }
+
+    /**
+     * Entry for the key if it is fresh or still usable as stale; entries past
+     * the stale window are dropped.
+     */
+    private synchronized Entry lookup(long key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() > entry.staleUntil) {
+            entries.remove(key);
+            cachedFlights -= entry.flights.size();
+            expirations.incrementAndGet();
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void put(long key, List<FlightCrawler.FlightInfo> flights, String date) {
+        long now = System.currentTimeMillis();
+        long ttl = ttlMillis(date);
+        Entry previous = entries.put(key, new Entry(flights, now + ttl, now + ttl * STALE_WINDOW_FACTOR));
+        if (previous != null) {
+            cachedFlights -= previous.flights.size();
+        }
+        cachedFlights += flights.size();
+
+        Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+        while (cachedFlights > maxFlights && eldest.hasNext()) {
+            Map.Entry<Long, Entry> candidate = eldest.next();
+            if (candidate.getKey() == key) {
+                continue;
+            }
+            cachedFlights -= candidate.getValue().flights.size();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fares for flights leaving within days change by the minute; fares months
+     * out are stable for hours.
+     */
+    static long ttlMillis(String date) {
+        long days;
+        try {
+            days = LocalDate.parse(date).toEpochDay() - LocalDate.now().toEpochDay();
+        } catch (DateTimeParseException e) {
+            days = 0;
+        }
+        long minutes;
+        if (days <= 3) {
+            minutes = 5;
+        } else if (days <= 14) {
+            minutes = 15;
+        } else if (days <= 60) {
+            minutes = 60;
+        } else {
+            minutes = 360;
+        }
+        return minutes * 60_000;
+    }
+
+    private static long key(String originCode, String destinationCode, String date) {
+        long epochDay;
+        try {
+            epochDay = LocalDate.parse(date).toEpochDay();
+        } catch (DateTimeParseException | NullPointerException e) {
+            return AirportCode.NONE;
+        }
+        return AirportCode.routeDateKey(AirportCode.pack(originCode), AirportCode.pack(destinationCode), epochDay);
+    }
+
+    public String getStats() {
+        int entryCount;
+        int flightCount;
+        synchronized (this) {
+            entryCount = entries.size();
+            flightCount = cachedFlights;
+        }
+        return String.format(
+                "Search cache: %d hits, %d stale hits, %d misses, %d refreshes, %d coalesced, %d evictions, %d expirations, %d routes / %d flights cached",
+                hits.get(), staleHits.get(), misses.get(), refreshes.get(), coalesced.get(), evictions.get(),
+                expirations.get(), entryCount, flightCount);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * What a loader found: the flights, and whether they are the whole
+     * result for the route/date.
+     */
+    public static final class Loaded {
+        private final List<FlightCrawler.FlightInfo> flights;
+        private final boolean complete;
+
+        private Loaded(List<FlightCrawler.FlightInfo> flights, boolean complete) {
+            this.flights = List.copyOf(flights);
+            this.complete = complete;
+        }
+
+        public static Loaded complete(List<FlightCrawler.FlightInfo> flights) {
+            return new Loaded(flights, true);
+        }
+
+        /**
+         * Flights of a search that stopped early: handed to every caller of
+         * the load, but not cached.
+         */
+        public static Loaded partial(List<FlightCrawler.FlightInfo> flights) {
+            return new Loaded(flights, false);
+        }
+    }
+
+    private static class Entry {
+        private final List<FlightCrawler.FlightInfo> flights;
+        private final long freshUntil;
+        private final long staleUntil;
+
+        Entry(List<FlightCrawler.FlightInfo> flights, long freshUntil, long staleUntil) {
+            this.flights = flights;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+        }
+
+        boolean isFresh(long now) {
+            return now <= freshUntil;
+        }
+    }
+}
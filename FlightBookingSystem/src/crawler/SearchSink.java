@@ -0,0 +1,38 @@
+package crawler;
+
+import java.util.List;
+
+/**
+ * Receives the flights of a streaming search (FlightCrawler.streamFlights)
+ * chunk by chunk, as the result page loads and is extracted, instead of all
+ * at once at the end. Called on the crawler's browser worker thread, or on
+ * the searching thread when the result comes from the cache.
+ */
+public interface SearchSink {
+
+    /**
+     * More flights, in page order. Never called with an empty list.
+     */
+    void onFlights(List<FlightCrawler.FlightInfo> batch);
+
+    /**
+     * The search is over; all is every flight delivered (possibly none).
+     */
+    default void onComplete(List<FlightCrawler.FlightInfo> all) {
+    }
+
+    /**
+     * Newer fares from a stale-while-revalidate refresh, replacing everything
+     * delivered so far. May arrive after onComplete.
+     */
+    default void onRefresh(List<FlightCrawler.FlightInfo> all) {
+    }
+
+    /**
+     * Polled between chunks; once true the crawler stops scrolling and
+     * extracting, and the partial result is not cached.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
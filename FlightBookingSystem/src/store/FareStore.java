@@ -0,0 +1,689 @@
+package store;
+
+import crawler.AirportCode;
+import crawler.FareBatch;
+import crawler.FareTextParser;
+import crawler.FlightData;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent, append-only store for crawled fares.
+ *
+ * Fares are appended to fixed-size segment files written through memory-mapped
+ * I/O. Each record is framed as [int payloadLength][int crc32][payload]; the
+ * length is written last, so a torn write is detected on recovery by a zero
+ * length or a CRC mismatch, and the segment is truncated there.
+ *
+ * Payload layout (big-endian):
+ * int origin, int destination (packed 3-letter codes), int departure epoch day,
+ * long crawledAt millis, long price in fen, short departure minute,
+ * short arrival minute, byte arrival day offset, byte transfer count,
+ * byte+UTF-8 flight number, byte+UTF-8 airline.
+ *
+ * Every segment keeps an in-memory index from route/date to record offsets,
+ * rebuilt by scanning on open. A background task compacts sealed segments,
+ * dropping fares superseded by a newer crawl of the same flight (same flight
+ * number, departure minute and airline, so rows whose flight number could
+ * not be read are not merged with each other).
+ *
+ * Compaction is tiered: appended segments are level 0, and merging the
+ * segments of level L writes level L+1, whose file names carry the level
+ * (fares-000012-L1.seg). Level 0 is merged whenever segments are sealed,
+ * level L >= 1 once it holds LEVEL_FANOUT^L segments, so each record is
+ * rewritten about once per level rather than on every pass. A record
+ * superseded in a lower level survives in its own until that level is
+ * merged; reads resolve duplicates by crawl time. Higher levels hold older
+ * crawls, so they come first, and the active segment is always the newest
+ * level 0 segment.
+ */
+public class FareStore implements AutoCloseable {
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final int FIXED_PAYLOAD_SIZE = 4 + 4 + 4 + 8 + 8 + 2 + 2 + 1 + 1;
+    private static final int MAX_PAYLOAD_SIZE = FIXED_PAYLOAD_SIZE + 2 * (1 + 255);
+    private static final String SEGMENT_PREFIX = "fares-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String COMPACTING_SUFFIX = ".seg.compacting";
+    private static final String LEVEL_SEPARATOR = "-L";
+
+    // Compact once this many level 0 segments have been sealed
+    private static final int SEALED_SEGMENTS_PER_COMPACTION = 2;
+    // Level L >= 1 is merged into L+1 once it holds LEVEL_FANOUT^L segments
+    private static final int LEVEL_FANOUT = 4;
+    // Oldest data first: higher levels, then by id within a level
+    private static final Comparator<Segment> SEGMENT_ORDER = Comparator.<Segment>comparingInt(s -> -s.level)
+            .thenComparingInt(s -> s.id);
+    private static final long COMPACTION_CHECK_MINUTES = 10;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private int nextSegmentId;
+    private boolean closed;
+    private final ScheduledExecutorService compactor;
+    // One compaction at a time; it only holds the store lock to swap segments
+    private final Object compactionLock = new Object();
+
+    private FareStore(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fare-store-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Open (or create) a store, recovering every segment in the directory.
+     */
+    public static FareStore open(Path directory) throws IOException {
+        return open(directory, SEGMENT_SIZE);
+    }
+
+    /**
+     * With smaller segments, so checks can seal and compact a few of them.
+     */
+    static FareStore open(Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        FareStore store = new FareStore(directory, segmentSize);
+        store.recover();
+        store.compactor.scheduleWithFixedDelay(store::compactIfDue, COMPACTION_CHECK_MINUTES,
+                COMPACTION_CHECK_MINUTES, TimeUnit.MINUTES);
+        return store;
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(SEGMENT_PREFIX)) {
+                    continue;
+                }
+                if (name.endsWith(COMPACTING_SUFFIX)) {
+                    // Unfinished compaction output; the originals are still in place
+                    Files.delete(file);
+                } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                    String stem = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                    int separator = stem.indexOf(LEVEL_SEPARATOR);
+                    int id = Integer.parseInt(separator < 0 ? stem : stem.substring(0, separator));
+                    int level = separator < 0 ? 0
+                            : Integer.parseInt(stem.substring(separator + LEVEL_SEPARATOR.length()));
+                    segments.add(Segment.open(file, id, level, segmentSize));
+                    nextSegmentId = Math.max(nextSegmentId, id + 1);
+                }
+            }
+        }
+        segments.sort(SEGMENT_ORDER);
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last == null || last.level > 0) {
+            active = newSegment();
+        } else {
+            active = last;
+        }
+    }
+
+    /**
+     * Append one crawled fare. Fares without valid 3-letter codes or date are
+     * skipped.
+     *
+     * @return true if the fare was written
+     */
+    public synchronized boolean append(FlightData flight, long crawledAtMillis) throws IOException {
+        byte[] payload = encode(flight, crawledAtMillis);
+        if (payload == null) {
+            return false;
+        }
+        if (!active.hasRoom(payload.length)) {
+            active.force();
+            active = newSegment();
+        }
+        active.append(payload, routeDateKey(payload));
+        return true;
+    }
+
+    public synchronized int appendAll(List<FlightData> flights, long crawledAtMillis) throws IOException {
+        int written = 0;
+        for (FlightData flight : flights) {
+            if (append(flight, crawledAtMillis)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Latest known fare of every flight on a route/date.
+     */
+    public synchronized List<FlightData> query(String origin, String destination, String date) {
+        int originCode = AirportCode.pack(origin);
+        int destinationCode = AirportCode.pack(destination);
+        int epochDay = epochDay(date);
+        if (originCode < 0 || destinationCode < 0 || epochDay < 0) {
+            return new ArrayList<>();
+        }
+        long key = AirportCode.routeDateKey(originCode, destinationCode, epochDay);
+
+        List<FlightData> flights = new ArrayList<>();
+        for (Record record : latestRecords(key)) {
+            flights.add(record.toFlightData());
+        }
+        flights.sort(null);
+        return flights;
+    }
+
+    /**
+     * Latest known fare of every flight departing between first and last
+     * (inclusive) on any route, as a columnar batch, e.g. to build a route
+     * graph. Only the in-memory index is consulted to pick route/dates, so
+     * records outside the window are never read.
+     */
+    public synchronized FareBatch latestFares(LocalDate first, LocalDate last) {
+        long firstDay = first.toEpochDay();
+        long lastDay = last.toEpochDay();
+        Set<Long> keys = new TreeSet<>();
+        for (Segment segment : segments) {
+            for (long key : segment.index.keySet()) {
+                long day = (int) key;
+                if (day >= firstDay && day <= lastDay) {
+                    keys.add(key);
+                }
+            }
+        }
+
+        FareBatch batch = new FareBatch(keys.size() * 8);
+        for (long key : keys) {
+            for (Record record : latestRecords(key)) {
+                batch.add(record.priceFen, record.departureMinute, record.arrivalMinute, record.arrivalDayOffset,
+                        record.transferCount, record.origin, record.destination, record.epochDay, record.airline,
+                        record.flightNumber);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Newest record per flight (see Record.identity) for one route/date key.
+     */
+    private Collection<Record> latestRecords(long key) {
+        Map<String, Record> latest = new HashMap<>();
+        for (Segment segment : segments) {
+            OffsetList offsets = segment.index.get(key);
+            if (offsets == null) {
+                continue;
+            }
+            for (int i = 0; i < offsets.size; i++) {
+                Record record = segment.read(offsets.values[i]);
+                Record current = latest.get(record.identity());
+                if (current == null || record.crawledAt > current.crawledAt) {
+                    latest.put(record.identity(), record);
+                }
+            }
+        }
+        return latest.values();
+    }
+
+    public synchronized long recordCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.recordCount;
+        }
+        return count;
+    }
+
+    /**
+     * Force all written records to disk.
+     */
+    public synchronized void flush() {
+        for (Segment segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Compact if enough level 0 segments have been sealed; run every few
+     * minutes, and by checks.
+     */
+    void compactIfDue() {
+        try {
+            synchronized (this) {
+                if (sealedAt(0).size() < SEALED_SEGMENTS_PER_COMPACTION) {
+                    return;
+                }
+            }
+            compact();
+        } catch (IOException e) {
+            System.err.println("Fare store compaction failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merge the sealed level 0 segments into level 1, then every level that
+     * has reached its size limit into the next one.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            for (int level = 0;; level++) {
+                List<Segment> sealed;
+                synchronized (this) {
+                    sealed = sealedAt(level);
+                }
+                int limit = level == 0 ? 1 : (int) Math.min(Integer.MAX_VALUE, Math.pow(LEVEL_FANOUT, level));
+                if (sealed.size() < limit || !merge(sealed, level + 1)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sealed segments of one level, oldest first.
+     */
+    private List<Segment> sealedAt(int level) {
+        List<Segment> sealed = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.level == level && segment != active) {
+                sealed.add(segment);
+            }
+        }
+        return sealed;
+    }
+
+    /**
+     * Rewrite the given sealed segments as segments of the given level,
+     * keeping only the newest record per route/date/flight among them.
+     * Sealed segments are never written again, so they are read and
+     * rewritten without the store lock and appends carry on meanwhile; the
+     * lock is only taken to swap in the result. New segments are written
+     * under a temporary name, forced and renamed before the originals are
+     * deleted, so a crash at any point leaves either the old or the new data.
+     *
+     * @return false if the store was closed meanwhile
+     */
+    private boolean merge(List<Segment> sealed, int level) throws IOException {
+        Set<Long> keys = new HashSet<>();
+        long before = 0;
+        for (Segment segment : sealed) {
+            keys.addAll(segment.index.keySet());
+            before += segment.recordCount;
+        }
+
+        List<Segment> written = new ArrayList<>();
+        List<Path> pending = new ArrayList<>();
+        Segment output = null;
+        long after = 0;
+        try {
+            for (long key : keys) {
+                // Newest crawl time per flight across the sealed segments
+                Map<String, Long> newest = new HashMap<>();
+                for (Segment segment : sealed) {
+                    OffsetList offsets = segment.index.get(key);
+                    if (offsets == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < offsets.size; i++) {
+                        Record record = segment.read(offsets.values[i]);
+                        newest.merge(record.identity(), record.crawledAt, Math::max);
+                    }
+                }
+                for (Segment segment : sealed) {
+                    OffsetList offsets = segment.index.get(key);
+                    if (offsets == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < offsets.size; i++) {
+                        int offset = offsets.values[i];
+                        Record record = segment.read(offset);
+                        if (record.crawledAt != newest.get(record.identity())) {
+                            continue;
+                        }
+                        newest.put(record.identity(), Long.MAX_VALUE); // keep exactly one copy
+                        byte[] payload = segment.payload(offset);
+                        if (output == null || !output.hasRoom(payload.length)) {
+                            if (output != null) {
+                                output.force();
+                            }
+                            int id = allocateSegmentId();
+                            Path temp = directory.resolve(segmentName(id, level) + COMPACTING_SUFFIX);
+                            output = Segment.create(temp, id, level, segmentSize);
+                            written.add(output);
+                            pending.add(temp);
+                        }
+                        output.append(payload, key);
+                        after++;
+                    }
+                }
+            }
+            if (output != null) {
+                output.force();
+            }
+        } catch (IOException | RuntimeException e) {
+            discard(written, pending);
+            throw e;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                discard(written, pending);
+                return false;
+            }
+            // Publish compacted segments, then drop the originals
+            for (int i = 0; i < written.size(); i++) {
+                Segment segment = written.get(i);
+                segment.path = segmentPath(segment.id, level);
+                Files.move(pending.get(i), segment.path, StandardCopyOption.ATOMIC_MOVE);
+            }
+            segments.removeAll(sealed);
+            segments.addAll(written);
+            segments.sort(SEGMENT_ORDER);
+            for (Segment segment : sealed) {
+                segment.close();
+                Files.deleteIfExists(segment.path);
+            }
+        }
+        System.out.println("Fare store compacted " + sealed.size() + " level " + (level - 1) + " segments: "
+                + before + " -> " + after + " records");
+        return true;
+    }
+
+    private synchronized int allocateSegmentId() {
+        return nextSegmentId++;
+    }
+
+    private static void discard(List<Segment> written, List<Path> pending) throws IOException {
+        for (Segment segment : written) {
+            segment.close();
+        }
+        for (Path temp : pending) {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        compactor.shutdownNow();
+        for (Segment segment : segments) {
+            segment.force();
+            segment.close();
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        int id = nextSegmentId++;
+        Segment segment = Segment.create(segmentPath(id, 0), id, 0, segmentSize);
+        segments.add(segment);
+        return segment;
+    }
+
+    private Path segmentPath(int id, int level) {
+        return directory.resolve(segmentName(id, level) + SEGMENT_SUFFIX);
+    }
+
+    private static String segmentName(int id, int level) {
+        String name = String.format(SEGMENT_PREFIX + "%06d", id);
+        return level == 0 ? name : name + LEVEL_SEPARATOR + level;
+    }
+
+    // --- Encoding ---
+
+    private static byte[] encode(FlightData flight, long crawledAtMillis) {
+        int origin = AirportCode.pack(flight.getOrigin());
+        int destination = AirportCode.pack(flight.getDestination());
+        int epochDay = epochDay(flight.getDate());
+        if (origin < 0 || destination < 0 || epochDay < 0) {
+            return null;
+        }
+        byte[] flightNumber = truncatedUtf8(flight.getFlightNumber());
+        byte[] airline = truncatedUtf8(flight.getAirline());
+
+        ByteBuffer buffer = ByteBuffer
+                .allocate(FIXED_PAYLOAD_SIZE + 2 + flightNumber.length + airline.length);
+        buffer.putInt(origin);
+        buffer.putInt(destination);
+        buffer.putInt(epochDay);
+        buffer.putLong(crawledAtMillis);
+        buffer.putLong(Math.round(flight.getPrice() * 100));
+        buffer.putShort((short) FareTextParser.parseMinuteOfDay(flight.getDepartureTime()));
+        buffer.putShort((short) FareTextParser.parseMinuteOfDay(flight.getArrivalTime()));
+        buffer.put((byte) flight.getArrivalDayOffset());
+        buffer.put((byte) Math.min(flight.getTransferCount(), 127));
+        buffer.put((byte) flightNumber.length);
+        buffer.put(flightNumber);
+        buffer.put((byte) airline.length);
+        buffer.put(airline);
+        return buffer.array();
+    }
+
+    private static long routeDateKey(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        return AirportCode.routeDateKey(buffer.getInt(0), buffer.getInt(4), buffer.getInt(8));
+    }
+
+    private static int epochDay(String date) {
+        try {
+            return (int) LocalDate.parse(date).toEpochDay();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] truncatedUtf8(String text) {
+        byte[] bytes = (text == null ? "N/A" : text).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= 255) {
+            return bytes;
+        }
+        return Arrays.copyOf(bytes, 255);
+    }
+
+    // --- Segments ---
+
+    /**
+     * One mapped segment file and its route/date index.
+     */
+    private static class Segment {
+        private final int id;
+        private final int level;
+        private Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int size;
+        private final Map<Long, OffsetList> index = new HashMap<>();
+        private int writePosition;
+        private int recordCount;
+
+        private Segment(Path path, int id, int level, FileChannel channel, int size) throws IOException {
+            this.path = path;
+            this.id = id;
+            this.level = level;
+            this.channel = channel;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            this.size = size;
+        }
+
+        static Segment create(Path path, int id, int level, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(path, id, level, channel, size);
+        }
+
+        /**
+         * Map an existing segment and scan it, stopping at the first missing or
+         * corrupt record (the tail of a crashed write), which is zeroed out.
+         */
+        static Segment open(Path path, int id, int level, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(path, id, level, channel, size);
+            segment.scan();
+            return segment;
+        }
+
+        private void scan() {
+            int position = 0;
+            CRC32 crc = new CRC32();
+            while (position + HEADER_SIZE <= size) {
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                if (length < FIXED_PAYLOAD_SIZE + 2 || length > MAX_PAYLOAD_SIZE
+                        || position + HEADER_SIZE + length > size) {
+                    truncate(position);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(position + HEADER_SIZE, payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    System.err.println("Fare store: torn record in " + path.getFileName() + " at " + position
+                            + ", truncating");
+                    truncate(position);
+                    break;
+                }
+                index.computeIfAbsent(routeDateKey(payload), k -> new OffsetList()).add(position);
+                recordCount++;
+                position += HEADER_SIZE + length;
+            }
+            writePosition = position;
+        }
+
+        private void truncate(int position) {
+            for (int i = position; i < size && i < position + HEADER_SIZE + MAX_PAYLOAD_SIZE; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+
+        boolean hasRoom(int payloadLength) {
+            // Keep room for a zero length marker after the last record
+            return writePosition + HEADER_SIZE + payloadLength + 4 <= size;
+        }
+
+        void append(byte[] payload, long key) {
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            int position = writePosition;
+            buffer.put(position + HEADER_SIZE, payload);
+            buffer.putInt(position + 4, (int) crc.getValue());
+            // Length last: a record is only visible once it is complete
+            buffer.putInt(position, payload.length);
+            index.computeIfAbsent(key, k -> new OffsetList()).add(position);
+            writePosition = position + HEADER_SIZE + payload.length;
+            recordCount++;
+        }
+
+        byte[] payload(int position) {
+            byte[] payload = new byte[buffer.getInt(position)];
+            buffer.get(position + HEADER_SIZE, payload);
+            return payload;
+        }
+
+        Record read(int position) {
+            int p = position + HEADER_SIZE;
+            Record record = new Record();
+            record.origin = buffer.getInt(p);
+            record.destination = buffer.getInt(p + 4);
+            record.epochDay = buffer.getInt(p + 8);
+            record.crawledAt = buffer.getLong(p + 12);
+            record.priceFen = buffer.getLong(p + 20);
+            record.departureMinute = buffer.getShort(p + 28);
+            record.arrivalMinute = buffer.getShort(p + 30);
+            record.arrivalDayOffset = buffer.get(p + 32);
+            record.transferCount = buffer.get(p + 33);
+            int flightLength = buffer.get(p + 34) & 0xFF;
+            byte[] flightBytes = new byte[flightLength];
+            buffer.get(p + 35, flightBytes);
+            int airlineLength = buffer.get(p + 35 + flightLength) & 0xFF;
+            byte[] airlineBytes = new byte[airlineLength];
+            buffer.get(p + 36 + flightLength, airlineBytes);
+            record.flightNumber = new String(flightBytes, StandardCharsets.UTF_8);
+            record.airline = new String(airlineBytes, StandardCharsets.UTF_8);
+            return record;
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Decoded record.
+     */
+    private static class Record {
+        int origin;
+        int destination;
+        int epochDay;
+        long crawledAt;
+        long priceFen;
+        short departureMinute;
+        short arrivalMinute;
+        byte arrivalDayOffset;
+        byte transferCount;
+        String flightNumber;
+        String airline;
+
+        /**
+         * What makes two records the same flight on a route/date. The flight
+         * number alone is "N/A" for every row whose airline line did not
+         * split, so departure minute and airline are part of it.
+         */
+        String identity() {
+            return flightNumber + "|" + departureMinute + "|" + airline;
+        }
+
+        FlightData toFlightData() {
+            return new FlightData(flightNumber, airline, FareTextParser.formatMinute(departureMinute),
+                    FareTextParser.formatMinute(arrivalMinute), priceFen / 100.0, AirportCode.toUpperCase(origin),
+                    AirportCode.toUpperCase(destination), transferCount > 0, transferCount,
+                    LocalDate.ofEpochDay(epochDay).toString(), arrivalDayOffset);
+        }
+    }
+
+    /**
+     * Growable int array of record offsets.
+     */
+    private static class OffsetList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package store;
+
+import crawler.FlightData;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Round-trip checks of FareStore's on-disk format in a temporary directory:
+ * latest-fare resolution (including rows without a flight number), the
+ * latestFares date window, reopening, recovery from a torn record,
+ * compaction of sealed segments while fares keep being appended, and
+ * tiered compaction across reopens (appends after a reopen must go to the
+ * newest appended segment, never to a compacted one). Exits with status 1
+ * on a mismatch.
+ *
+ * Usage: FareStoreCheck
+ */
+public class FareStoreCheck {
+
+    // Small segments, so a few hundred fares seal several of them
+    private static final int SEGMENT_SIZE = 8 * 1024;
+    private static final String DATE = "2026-11-01";
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("fare-store-check");
+        try {
+            checkLatest(directory.resolve("latest"));
+            checkTornRecord(directory.resolve("torn"));
+            checkCompaction(directory.resolve("compaction"));
+            checkTiers(directory.resolve("tiers"));
+        } finally {
+            deleteRecursively(directory);
+        }
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All fare store checks passed.");
+    }
+
+    private static void checkLatest(Path directory) throws IOException {
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            store.append(fare("MU5101", "东方航空", "07:00", 680), 1000);
+            // Two rows whose flight number could not be read: different flights
+            store.append(fare("N/A", "东方航空", "09:30", 720), 1000);
+            store.append(fare("N/A", "吉祥航空", "12:10", 540), 1000);
+            check("distinct flights", store.query("SHA", "BJS", DATE).size(), 3);
+
+            store.append(fare("MU5101", "东方航空", "07:00", 640), 2000);
+            store.append(fare("N/A", "东方航空", "09:30", 700), 2000);
+            check("newer crawl supersedes", describe(store.query("SHA", "BJS", DATE)),
+                    "[N/A 12:10 540.0, MU5101 07:00 640.0, N/A 09:30 700.0]");
+            check("records", store.recordCount(), 5L);
+
+            // Another day on the same route stays outside the window
+            store.append(new FlightData("MU5101", "东方航空", "07:00", "09:15", 700, "SHA", "BJS", false, 0,
+                    "2026-11-02", 0), 2000);
+            LocalDate day = LocalDate.parse(DATE);
+            check("latest fares in window", store.latestFares(day, day).size(), 3);
+            check("latest fares over two days", store.latestFares(day, day.plusDays(1)).size(), 4);
+        }
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            check("reopened", describe(store.query("SHA", "BJS", DATE)),
+                    "[N/A 12:10 540.0, MU5101 07:00 640.0, N/A 09:30 700.0]");
+            check("reopened records", store.recordCount(), 6L);
+        }
+    }
+
+    private static void checkTornRecord(Path directory) throws IOException {
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            store.append(fare("MU5101", "东方航空", "07:00", 680), 1000);
+            store.append(fare("HO1251", "吉祥航空", "22:50", 450), 1000);
+        }
+        // Corrupt the last record's payload, as a crash mid-write would leave it
+        Path segment = newestSegment(directory);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            int position = 0;
+            int last = -1;
+            while (buffer.getInt(position) != 0) {
+                last = position;
+                position += 8 + buffer.getInt(position);
+            }
+            buffer.put(last + 8 + 12, (byte) (buffer.get(last + 8 + 12) ^ 0x55));
+        }
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            check("torn record dropped", describe(store.query("SHA", "BJS", DATE)), "[MU5101 07:00 680.0]");
+            store.append(fare("CA1858", "中国国航", "08:00", 900), 3000);
+        }
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            check("append after recovery", describe(store.query("SHA", "BJS", DATE)),
+                    "[MU5101 07:00 680.0, CA1858 08:00 900.0]");
+        }
+    }
+
+    private static void checkCompaction(Path directory) throws Exception {
+        List<String> expected;
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            // 40 flights crawled 20 times: only the last crawl of each survives
+            for (int crawl = 0; crawl < 20; crawl++) {
+                for (int flight = 0; flight < 40; flight++) {
+                    String number = flight % 4 == 0 ? "N/A" : "MU" + (5100 + flight);
+                    store.append(fare(number, "东方航空", minute(flight), 500 + crawl * 10 + flight), crawl);
+                }
+            }
+            long before = store.recordCount();
+
+            // Keep appending newer crawls while compacting
+            Thread appender = new Thread(() -> {
+                try {
+                    for (int flight = 0; flight < 40; flight++) {
+                        String number = flight % 4 == 0 ? "N/A" : "MU" + (5100 + flight);
+                        store.append(fare(number, "东方航空", minute(flight), 400 + flight), 100);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            appender.start();
+            store.compact();
+            appender.join();
+
+            expected = describe(store.query("SHA", "BJS", DATE));
+            check("flights after compaction", expected.size(), 40);
+            check("latest prices after compaction", expected.get(0), "N/A 06:00 400.0");
+            check("compaction dropped superseded records", store.recordCount() < before, true);
+            store.compact();
+            check("second compaction", describe(store.query("SHA", "BJS", DATE)), expected);
+        }
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            check("reopened after compaction", describe(store.query("SHA", "BJS", DATE)), expected);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            check("no compaction leftovers", files.noneMatch(f -> f.toString().endsWith(".compacting")), true);
+        }
+    }
+
+    private static void checkTiers(Path directory) throws Exception {
+        // Each round crawls 40 flights 20 times, sealing several level 0 segments
+        for (int round = 0; round < 2; round++) {
+            try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+                crawl(store, round);
+                store.compact();
+            }
+        }
+        List<String> compacted = files(directory, "-L1.seg");
+        check("level 1 segments after two rounds", compacted.size(), 2);
+        Map<String, Integer> contents = new HashMap<>();
+        for (String name : compacted) {
+            contents.put(name, Arrays.hashCode(Files.readAllBytes(directory.resolve(name))));
+        }
+
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            store.append(fare("MU5101", "东方航空", minute(1), 300), 15_000);
+        }
+        for (String name : compacted) {
+            check(name + " untouched by appends after reopen",
+                    Arrays.hashCode(Files.readAllBytes(directory.resolve(name))), contents.get(name));
+        }
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            check("append after reopen", describe(store.query("SHA", "BJS", DATE)).contains("MU5101 06:15 300.0"),
+                    true);
+            // Sealed but not compacted before the close: still due after reopen
+            for (int crawl = 0; crawl < 20; crawl++) {
+                for (int flight = 0; flight < 40; flight++) {
+                    String number = flight % 4 == 0 ? "N/A" : "MU" + (5100 + flight);
+                    store.append(fare(number, "东方航空", minute(flight), 700), 15_001 + crawl);
+                }
+            }
+        }
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            check("sealed level 0 segments after reopen", files(directory, ".seg").size()
+                    - files(directory, "-L1.seg").size() > 2, true);
+            store.compactIfDue();
+            check("level 1 segments untouched by level 0 compaction",
+                    files(directory, "-L1.seg").containsAll(compacted), true);
+            check("level 0 segments after compaction", files(directory, ".seg").size()
+                    - files(directory, "-L1.seg").size(), 1);
+            check("latest prices", describe(store.query("SHA", "BJS", DATE)).contains("MU5101 06:15 700.0"),
+                    true);
+        }
+
+        // A fourth level 1 segment fills the level, which is merged into level 2
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            crawl(store, 2);
+            store.compact();
+        }
+        check("level 1 merged into level 2", files(directory, "-L1.seg").size(), 0);
+        check("level 2 segments", files(directory, "-L2.seg").size(), 1);
+        try (FareStore store = FareStore.open(directory, SEGMENT_SIZE)) {
+            List<String> flights = describe(store.query("SHA", "BJS", DATE));
+            check("flights after merging levels", flights.size(), 40);
+            check("latest prices after merging levels", flights.contains("N/A 06:00 2019.0"), true);
+            // One per flight in level 2, plus the unsealed tail of the last round
+            check("superseded records dropped across levels", store.recordCount() < 2 * 40, true);
+        }
+    }
+
+    private static void crawl(FareStore store, int round) throws IOException {
+        for (int crawl = 0; crawl < 20; crawl++) {
+            for (int flight = 0; flight < 40; flight++) {
+                String number = flight % 4 == 0 ? "N/A" : "MU" + (5100 + flight);
+                store.append(fare(number, "东方航空", minute(flight), 1000 * round + crawl + flight),
+                        10_000 * round + crawl);
+            }
+        }
+    }
+
+    private static List<String> files(Path directory, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(f -> f.getFileName().toString()).filter(f -> f.endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    private static FlightData fare(String flightNumber, String airline, String departure, double price) {
+        return new FlightData(flightNumber, airline, departure, departure, price, "SHA", "BJS", false, 0, DATE, 0);
+    }
+
+    private static String minute(int flight) {
+        int minute = 360 + flight * 15;
+        return String.format("%02d:%02d", minute / 60, minute % 60);
+    }
+
+    private static List<String> describe(List<FlightData> flights) {
+        List<String> text = new ArrayList<>();
+        for (FlightData flight : flights) {
+            text.add(flight.getFlightNumber() + " " + flight.getDepartureTime() + " " + flight.getPrice());
+        }
+        return text;
+    }
+
+    private static Path newestSegment(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.toString().endsWith(".seg")).max(Comparator.naturalOrder()).orElseThrow();
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void check(String what, Object actual, Object expected) {
+        if (!expected.toString().equals(actual.toString())) {
+            System.out.println("FAIL " + what + ": expected " + expected + ", got " + actual);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,901 @@
+package store;
+
+import crawler.AirportCode;
+import crawler.FlightData;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Compressed price history per route, departure date and flight number, so
+ * a fare can be compared with what the same flight used to cost.
+ *
+ * Every crawl of a flight adds one point (crawl time, price). A flight's
+ * points collect in an open block, written out as one record once it holds
+ * BLOCK_POINTS points, or once the flight has departed and can get no more:
+ * - crawl times in seconds, as zigzag varint deltas-of-deltas; a regular
+ * crawl schedule makes these 0, one byte each,
+ * - prices in fen, as zigzag varint deltas; an unchanged price is one byte.
+ * A point costs 2-4 bytes, against about 60 for a FareStore record.
+ *
+ * Points of open blocks are also appended to a point log as they arrive
+ * ([int payloadLength][int crc32][payload]: long route/date key, byte+UTF-8
+ * flight number, int ordinal within the flight, long second, long price in
+ * fen), which is replayed into the open blocks on open; a point whose
+ * ordinal is already in a block is skipped. The log is rewritten with only
+ * the open points on open and close, and when it has grown well past them,
+ * so it stays a small multiple of the points not yet in a block.
+ *
+ * Blocks go into memory-mapped segment files framed as in FareStore
+ * ([int payloadLength][int crc32][payload], length written last, a torn tail
+ * is truncated on open). Block payload (big-endian):
+ * long route/date key (AirportCode.routeDateKey), byte+UTF-8 flight number,
+ * short point count, long min second, long max second, long first second,
+ * long first price in fen, then the encoded deltas.
+ *
+ * The in-memory index keeps, per flight, where its blocks are and the time
+ * span each covers, so a range query only decodes blocks that overlap it.
+ */
+public class PriceHistory implements AutoCloseable {
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final int BLOCK_POINTS = 128;
+    private static final int FIXED_BLOCK_SIZE = 8 + 1 + 2 + 8 + 8 + 8 + 8;
+    private static final int LOG_FIXED_SIZE = 8 + 1 + 4 + 8 + 8;
+    // Two varints of at most 10 bytes per point after the first
+    private static final int MAX_BLOCK_SIZE = FIXED_BLOCK_SIZE + 255 + (BLOCK_POINTS - 1) * 20;
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String LOG_FILE = "open-points.log";
+    // Rewrite the point log once it holds this many records and twice the open points
+    private static final long LOG_COMPACT_MIN_RECORDS = 100_000;
+
+    // Days in daily aggregates are calendar days where the crawler runs
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final Path directory;
+    private final Map<Integer, Segment> segments = new HashMap<>();
+    // Route/date key -> flight number -> series
+    private final Map<Long, Map<String, Series>> index = new HashMap<>();
+    private Segment active;
+    private int nextSegmentId;
+    private PointLog log;
+    private long pointCount;
+    private long openPoints;
+
+    private PriceHistory(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Open (or create) a history, indexing every block in the directory and
+     * replaying the point log into the open blocks.
+     */
+    public static PriceHistory open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        PriceHistory history = new PriceHistory(directory);
+        history.recover();
+        history.log = PointLog.open(directory.resolve(LOG_FILE));
+        history.replayLog();
+        history.compactLog();
+        return history;
+    }
+
+    private void recover() throws IOException {
+        TreeSet<Integer> ids = new TreeSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    ids.add(Integer.parseInt(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        for (int id : ids) {
+            active = Segment.open(segmentPath(id), id, this);
+            segments.put(id, active);
+            nextSegmentId = id + 1;
+        }
+        if (active == null) {
+            active = newSegment();
+        }
+    }
+
+    /**
+     * Add the price of one crawled flight. Flights without valid codes, date,
+     * flight number or a positive price are skipped.
+     *
+     * @return true if the point was added
+     */
+    public synchronized boolean record(FlightData flight, long crawledAtMillis) throws IOException {
+        long key = key(flight.getOrigin(), flight.getDestination(), flight.getDate());
+        String flightNumber = flight.getFlightNumber();
+        long priceFen = Math.round(flight.getPrice() * 100);
+        if (key < 0 || flightNumber == null || "N/A".equals(flightNumber) || priceFen <= 0) {
+            return false;
+        }
+        Series series = index.computeIfAbsent(key, k -> new HashMap<>())
+                .computeIfAbsent(flightNumber, n -> new Series(key, n));
+        long second = Math.floorDiv(crawledAtMillis, 1000);
+        // Logged before it counts, so a crash cannot lose a point already added
+        log.append(key, series.flightBytes, series.nextOrdinal(), second, priceFen);
+        add(series, second, priceFen);
+        if (log.records >= LOG_COMPACT_MIN_RECORDS && log.records > 2 * openPoints) {
+            compactLog();
+        }
+        return true;
+    }
+
+    public synchronized int recordAll(List<FlightData> flights, long crawledAtMillis) throws IOException {
+        int recorded = 0;
+        for (FlightData flight : flights) {
+            if (record(flight, crawledAtMillis)) {
+                recorded++;
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * Every recorded price of one flight crawled between from and to
+     * (inclusive, epoch millis), oldest first.
+     */
+    public synchronized Points range(String origin, String destination, String date, String flightNumber,
+            long fromMillis, long toMillis) {
+        Points points = new Points();
+        Map<String, Series> flights = index.get(key(origin, destination, date));
+        Series series = flights == null ? null : flights.get(flightNumber);
+        if (series != null) {
+            collect(series, Math.floorDiv(fromMillis, 1000), Math.floorDiv(toMillis, 1000), points);
+        }
+        points.sortByTime();
+        return points;
+    }
+
+    /**
+     * Lowest, average and highest price per crawl day between from and to,
+     * oldest day first: of one flight, or of every flight on the route/date
+     * if flightNumber is null.
+     */
+    public synchronized List<DailyPrice> daily(String origin, String destination, String date,
+            String flightNumber, long fromMillis, long toMillis) {
+        Map<String, Series> flights = index.get(key(origin, destination, date));
+        if (flights == null) {
+            return new ArrayList<>();
+        }
+        long fromSecond = Math.floorDiv(fromMillis, 1000);
+        long toSecond = Math.floorDiv(toMillis, 1000);
+        Points points = new Points();
+        if (flightNumber != null) {
+            Series series = flights.get(flightNumber);
+            if (series != null) {
+                collect(series, fromSecond, toSecond, points);
+            }
+        } else {
+            for (Series series : flights.values()) {
+                collect(series, fromSecond, toSecond, points);
+            }
+        }
+
+        TreeMap<LocalDate, DailyPrice> days = new TreeMap<>();
+        for (int i = 0; i < points.size; i++) {
+            LocalDate day = LocalDate.ofInstant(Instant.ofEpochSecond(points.seconds[i]), ZONE);
+            days.computeIfAbsent(day, DailyPrice::new).add(points.pricesFen[i]);
+        }
+        return new ArrayList<>(days.values());
+    }
+
+    /**
+     * Flight numbers with history on a route/date.
+     */
+    public synchronized List<String> flightNumbers(String origin, String destination, String date) {
+        Map<String, Series> flights = index.get(key(origin, destination, date));
+        List<String> numbers = flights == null ? new ArrayList<>() : new ArrayList<>(flights.keySet());
+        numbers.sort(null);
+        return numbers;
+    }
+
+    public synchronized long pointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Bytes written to disk: blocks (with their framing) plus the point log.
+     * Segment files are preallocated, so their size says little.
+     */
+    public synchronized long storedBytes() throws IOException {
+        long bytes = log.size();
+        for (Segment segment : segments.values()) {
+            bytes += segment.writePosition;
+        }
+        return bytes;
+    }
+
+    /**
+     * Force all segments and the point log to disk.
+     */
+    public synchronized void flush() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.force();
+        }
+        log.force();
+    }
+
+    /**
+     * Write out the blocks of departed flights and shrink the point log to
+     * the points still open; open blocks of upcoming flights stay open and
+     * carry on after the next open.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            compactLog();
+            flush();
+        } catch (IOException e) {
+            System.err.println("Could not write open price history blocks: " + e.getMessage());
+        }
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        log.close();
+    }
+
+    private void collect(Series series, long fromSecond, long toSecond, Points into) {
+        for (int i = 0; i < series.blockCount; i++) {
+            if (series.maxSeconds[i] < fromSecond || series.minSeconds[i] > toSecond) {
+                continue;
+            }
+            long ref = series.blocks[i];
+            segments.get((int) (ref >>> 32)).decode((int) ref, fromSecond, toSecond, into);
+        }
+        if (series.open != null) {
+            series.open.decode(fromSecond, toSecond, into);
+        }
+    }
+
+    private void add(Series series, long second, long priceFen) throws IOException {
+        if (series.open == null) {
+            series.open = new BlockEncoder();
+        }
+        series.open.add(second, priceFen);
+        pointCount++;
+        openPoints++;
+        if (series.open.count == BLOCK_POINTS) {
+            seal(series);
+        }
+    }
+
+    /**
+     * Write a series' open block to the active segment and index it.
+     */
+    private void seal(Series series) throws IOException {
+        BlockEncoder block = series.open;
+        byte[] payload = block.payload(series.key, series.flightBytes);
+        if (!active.hasRoom(payload.length)) {
+            active.force();
+            active = newSegment();
+        }
+        int offset = active.append(payload);
+        series.addBlock(((long) active.id << 32) | offset, block.minSecond, block.maxSecond, block.count);
+        series.open = null;
+        openPoints -= block.count;
+    }
+
+    /**
+     * Add the logged points that are not in a block yet to the open blocks.
+     * A torn record at the end (a crash mid-append) is cut off.
+     */
+    private void replayLog() throws IOException {
+        ByteBuffer buffer = log.read();
+        CRC32 crc = new CRC32();
+        int position = 0;
+        long records = 0;
+        int replayed = 0;
+        while (position + HEADER_SIZE <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length < LOG_FIXED_SIZE || length > LOG_FIXED_SIZE + 255
+                    || position + HEADER_SIZE + length > buffer.limit()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_SIZE, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+            records++;
+
+            ByteBuffer point = ByteBuffer.wrap(payload);
+            long key = point.getLong();
+            byte[] flightNumber = new byte[point.get() & 0xFF];
+            point.get(flightNumber);
+            long ordinal = point.getInt();
+            Series series = index.computeIfAbsent(key, k -> new HashMap<>())
+                    .computeIfAbsent(new String(flightNumber, StandardCharsets.UTF_8), n -> new Series(key, n));
+            if (ordinal < series.nextOrdinal()) {
+                // Already written out in a block
+                continue;
+            }
+            add(series, point.getLong(), point.getLong());
+            replayed++;
+        }
+        if (position < buffer.limit()) {
+            System.err.println("Price history: torn point log record at " + position + ", truncating");
+        }
+        log.truncate(position, records);
+        if (replayed > 0) {
+            System.out.println("Price history: replayed " + replayed + " open points.");
+        }
+    }
+
+    /**
+     * Seal the open blocks of flights that have departed, then rewrite the
+     * point log with just the points still open.
+     */
+    private void compactLog() throws IOException {
+        long today = LocalDate.now(ZONE).toEpochDay();
+        List<Series> open = new ArrayList<>();
+        for (Map.Entry<Long, Map<String, Series>> route : index.entrySet()) {
+            // The departure day is the low half of the route/date key
+            boolean departed = (int) route.getKey().longValue() < today;
+            for (Series series : route.getValue().values()) {
+                if (series.open == null) {
+                    continue;
+                }
+                if (departed) {
+                    seal(series);
+                } else {
+                    open.add(series);
+                }
+            }
+        }
+        // Blocks must be on disk before the log records of their points go
+        for (Segment segment : segments.values()) {
+            segment.force();
+        }
+        log.rewrite(open);
+    }
+
+    private Segment newSegment() throws IOException {
+        int id = nextSegmentId++;
+        Segment segment = Segment.create(segmentPath(id), id);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format(SEGMENT_PREFIX + "%06d", id) + SEGMENT_SUFFIX);
+    }
+
+    private static long key(String origin, String destination, String date) {
+        try {
+            return AirportCode.routeDateKey(AirportCode.pack(origin), AirportCode.pack(destination),
+                    LocalDate.parse(date).toEpochDay());
+        } catch (RuntimeException e) {
+            return AirportCode.NONE;
+        }
+    }
+
+    static byte[] truncatedUtf8(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= 255 ? bytes : Arrays.copyOf(bytes, 255);
+    }
+
+    // --- Encoding ---
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads the deltas of a block from position on, adding the points that
+     * fall between fromSecond and toSecond.
+     */
+    private static void decodeDeltas(ByteBuffer buffer, int position, int count, long firstSecond,
+            long firstPriceFen, long fromSecond, long toSecond, Points into) {
+        long second = firstSecond;
+        long price = firstPriceFen;
+        long delta = 0;
+        int p = position;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                long value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(p++);
+                    value |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                delta += unzigzag(value);
+                second += delta;
+
+                value = 0;
+                shift = 0;
+                do {
+                    b = buffer.get(p++);
+                    value |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                price += unzigzag(value);
+            }
+            if (second >= fromSecond && second <= toSecond) {
+                into.add(second, price);
+            }
+        }
+    }
+
+    /**
+     * Open block of one series, encoded as points arrive.
+     */
+    private static class BlockEncoder {
+        private byte[] deltas = new byte[16];
+        private int length;
+        private int count;
+        private long firstSecond;
+        private long firstPriceFen;
+        private long minSecond;
+        private long maxSecond;
+        private long lastSecond;
+        private long lastDelta;
+        private long lastPriceFen;
+
+        void add(long second, long priceFen) {
+            if (count == 0) {
+                firstSecond = second;
+                firstPriceFen = priceFen;
+                minSecond = second;
+                maxSecond = second;
+            } else {
+                long delta = second - lastSecond;
+                writeVarLong(zigzag(delta - lastDelta));
+                writeVarLong(zigzag(priceFen - lastPriceFen));
+                lastDelta = delta;
+                minSecond = Math.min(minSecond, second);
+                maxSecond = Math.max(maxSecond, second);
+            }
+            lastSecond = second;
+            lastPriceFen = priceFen;
+            count++;
+        }
+
+        private void writeVarLong(long value) {
+            if (length + 10 > deltas.length) {
+                deltas = Arrays.copyOf(deltas, deltas.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                deltas[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            deltas[length++] = (byte) value;
+        }
+
+        void decode(long fromSecond, long toSecond, Points into) {
+            decodeDeltas(ByteBuffer.wrap(deltas, 0, length), 0, count, firstSecond, firstPriceFen, fromSecond,
+                    toSecond, into);
+        }
+
+        byte[] payload(long key, byte[] flightNumber) {
+            ByteBuffer buffer = ByteBuffer.allocate(FIXED_BLOCK_SIZE + flightNumber.length + length);
+            buffer.putLong(key);
+            buffer.put((byte) flightNumber.length);
+            buffer.put(flightNumber);
+            buffer.putShort((short) count);
+            buffer.putLong(minSecond);
+            buffer.putLong(maxSecond);
+            buffer.putLong(firstSecond);
+            buffer.putLong(firstPriceFen);
+            buffer.put(deltas, 0, length);
+            return buffer.array();
+        }
+    }
+
+    /**
+     * Sealed blocks of one flight (segment id << 32 | offset, with the time
+     * span each covers) plus its open block, if any.
+     */
+    private static class Series {
+        private final long key;
+        private final byte[] flightBytes;
+        private long[] blocks = new long[2];
+        private long[] minSeconds = new long[2];
+        private long[] maxSeconds = new long[2];
+        private int blockCount;
+        private BlockEncoder open;
+        private int sealedPoints;
+
+        Series(long key, String flightNumber) {
+            this.key = key;
+            this.flightBytes = truncatedUtf8(flightNumber);
+        }
+
+        /**
+         * Position of the next point among all of the flight's points.
+         */
+        int nextOrdinal() {
+            return sealedPoints + (open == null ? 0 : open.count);
+        }
+
+        void addBlock(long ref, long minSecond, long maxSecond, int count) {
+            if (blockCount == blocks.length) {
+                blocks = Arrays.copyOf(blocks, blockCount * 2);
+                minSeconds = Arrays.copyOf(minSeconds, blockCount * 2);
+                maxSeconds = Arrays.copyOf(maxSeconds, blockCount * 2);
+            }
+            blocks[blockCount] = ref;
+            minSeconds[blockCount] = minSecond;
+            maxSeconds[blockCount] = maxSecond;
+            blockCount++;
+            sealedPoints += count;
+        }
+    }
+
+    // --- Segments ---
+
+    /**
+     * One mapped segment file of blocks.
+     */
+    private static class Segment {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        private Segment(Path path, int id, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.id = id;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path path, int id) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(path, id, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+        }
+
+        /**
+         * Map an existing segment and index its blocks into the history,
+         * stopping at the first missing or corrupt one (the tail of a crashed
+         * write), which is zeroed out.
+         */
+        static Segment open(Path path, int id, PriceHistory history) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(path, id, channel,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+            segment.scan(history);
+            return segment;
+        }
+
+        private void scan(PriceHistory history) {
+            int position = 0;
+            CRC32 crc = new CRC32();
+            while (position + HEADER_SIZE <= SEGMENT_SIZE) {
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    break;
+                }
+                if (length < FIXED_BLOCK_SIZE || length > MAX_BLOCK_SIZE
+                        || position + HEADER_SIZE + length > SEGMENT_SIZE) {
+                    truncate(position);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(position + HEADER_SIZE, payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    System.err.println("Price history: torn block in " + path.getFileName() + " at " + position
+                            + ", truncating");
+                    truncate(position);
+                    break;
+                }
+
+                ByteBuffer block = ByteBuffer.wrap(payload);
+                long key = block.getLong();
+                byte[] flightNumber = new byte[block.get() & 0xFF];
+                block.get(flightNumber);
+                int count = block.getShort();
+                long minSecond = block.getLong();
+                long maxSecond = block.getLong();
+                history.index.computeIfAbsent(key, k -> new HashMap<>())
+                        .computeIfAbsent(new String(flightNumber, StandardCharsets.UTF_8), n -> new Series(key, n))
+                        .addBlock(((long) id << 32) | position, minSecond, maxSecond, count);
+                history.pointCount += count;
+                position += HEADER_SIZE + length;
+            }
+            writePosition = position;
+        }
+
+        private void truncate(int position) {
+            for (int i = position; i < SEGMENT_SIZE && i < position + HEADER_SIZE + MAX_BLOCK_SIZE; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+
+        boolean hasRoom(int payloadLength) {
+            // Keep room for a zero length marker after the last block
+            return writePosition + HEADER_SIZE + payloadLength + 4 <= SEGMENT_SIZE;
+        }
+
+        /**
+         * @return offset of the block
+         */
+        int append(byte[] payload) {
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            int position = writePosition;
+            buffer.put(position + HEADER_SIZE, payload);
+            buffer.putInt(position + 4, (int) crc.getValue());
+            // Length last: a block is only visible once it is complete
+            buffer.putInt(position, payload.length);
+            writePosition = position + HEADER_SIZE + payload.length;
+            return position;
+        }
+
+        void decode(int position, long fromSecond, long toSecond, Points into) {
+            int p = position + HEADER_SIZE + 8;
+            int flightLength = buffer.get(p) & 0xFF;
+            p += 1 + flightLength;
+            int count = buffer.getShort(p);
+            long firstSecond = buffer.getLong(p + 2 + 16);
+            long firstPriceFen = buffer.getLong(p + 2 + 24);
+            decodeDeltas(buffer, p + 2 + 32, count, firstSecond, firstPriceFen, fromSecond, toSecond, into);
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Append-only file of the points in open blocks.
+     */
+    private static class PointLog {
+        private final Path path;
+        private FileChannel channel;
+        private long records;
+
+        private PointLog(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        static PointLog open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            return new PointLog(path, channel);
+        }
+
+        ByteBuffer read() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+                // read advances the buffer
+            }
+            return buffer.flip();
+        }
+
+        /**
+         * Keep the first records, which end at position, and append after them.
+         */
+        void truncate(int position, long records) throws IOException {
+            channel.truncate(position);
+            channel.position(position);
+            this.records = records;
+        }
+
+        void append(long key, byte[] flightNumber, int ordinal, long second, long priceFen) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + LOG_FIXED_SIZE + flightNumber.length);
+            put(buffer, key, flightNumber, ordinal, second, priceFen, new CRC32());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            records++;
+        }
+
+        private static void put(ByteBuffer buffer, long key, byte[] flightNumber, int ordinal, long second,
+                long priceFen, CRC32 crc) {
+            int start = buffer.position();
+            int length = LOG_FIXED_SIZE + flightNumber.length;
+            buffer.position(start + HEADER_SIZE);
+            buffer.putLong(key);
+            buffer.put((byte) flightNumber.length);
+            buffer.put(flightNumber);
+            buffer.putInt(ordinal);
+            buffer.putLong(second);
+            buffer.putLong(priceFen);
+            crc.reset();
+            crc.update(buffer.array(), start + HEADER_SIZE, length);
+            buffer.putInt(start, length);
+            buffer.putInt(start + 4, (int) crc.getValue());
+        }
+
+        /**
+         * Replace the log with the points of the given open blocks, through a
+         * temporary file so a crash leaves either the old log or the new one.
+         */
+        void rewrite(List<Series> open) throws IOException {
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            long written = 0;
+            CRC32 crc = new CRC32();
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Series series : open) {
+                    Points points = new Points();
+                    series.open.decode(Long.MIN_VALUE, Long.MAX_VALUE, points);
+                    ByteBuffer buffer = ByteBuffer
+                            .allocate(points.size * (HEADER_SIZE + LOG_FIXED_SIZE + series.flightBytes.length));
+                    for (int i = 0; i < points.size; i++) {
+                        put(buffer, series.key, series.flightBytes, series.sealedPoints + i, points.seconds[i],
+                                points.pricesFen[i], crc);
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    written += points.size;
+                }
+                out.force(true);
+            }
+            channel.close();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            records = written;
+        }
+
+        long size() throws IOException {
+            return channel.size();
+        }
+
+        void force() throws IOException {
+            channel.force(false);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // --- Results ---
+
+    /**
+     * Recorded prices of a flight, as parallel columns.
+     */
+    public static class Points {
+        private long[] seconds = new long[16];
+        private long[] pricesFen = new long[16];
+        private int size;
+
+        private void add(long second, long priceFen) {
+            if (size == seconds.length) {
+                seconds = Arrays.copyOf(seconds, size * 2);
+                pricesFen = Arrays.copyOf(pricesFen, size * 2);
+            }
+            seconds[size] = second;
+            pricesFen[size] = priceFen;
+            size++;
+        }
+
+        /**
+         * Insertion sort: blocks are nearly always in time order already.
+         */
+        private void sortByTime() {
+            for (int i = 1; i < size; i++) {
+                long second = seconds[i];
+                long price = pricesFen[i];
+                int j = i - 1;
+                while (j >= 0 && seconds[j] > second) {
+                    seconds[j + 1] = seconds[j];
+                    pricesFen[j + 1] = pricesFen[j];
+                    j--;
+                }
+                seconds[j + 1] = second;
+                pricesFen[j + 1] = price;
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getTimeMillis(int i) {
+            return seconds[i] * 1000;
+        }
+
+        public long getPriceFen(int i) {
+            return pricesFen[i];
+        }
+
+        public double getPrice(int i) {
+            return pricesFen[i] / 100.0;
+        }
+    }
+
+    /**
+     * Price summary of one crawl day.
+     */
+    public static class DailyPrice {
+        private final LocalDate day;
+        private long minFen = Long.MAX_VALUE;
+        private long maxFen = Long.MIN_VALUE;
+        private long sumFen;
+        private int count;
+
+        private DailyPrice(LocalDate day) {
+            this.day = day;
+        }
+
+        private void add(long priceFen) {
+            minFen = Math.min(minFen, priceFen);
+            maxFen = Math.max(maxFen, priceFen);
+            sumFen += priceFen;
+            count++;
+        }
+
+        public LocalDate getDay() {
+            return day;
+        }
+
+        public long getMinFen() {
+            return minFen;
+        }
+
+        public long getMaxFen() {
+            return maxFen;
+        }
+
+        public double getAverageFen() {
+            return (double) sumFen / count;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: min %.2f, avg %.2f, max %.2f (%d)", day, minFen / 100.0,
+                    getAverageFen() / 100.0, maxFen / 100.0, count);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package store;
+
+import crawler.FlightData;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Round-trip checks of PriceHistory in a temporary directory: the storage
+ * cost of flights crawled every 2 hours over a long run of short-lived
+ * processes, replay of the point log after a crash (including a torn last
+ * record), and writing out the open blocks of departed flights. Exits with
+ * status 1 on a mismatch.
+ *
+ * Usage: PriceHistoryCheck
+ */
+public class PriceHistoryCheck {
+
+    private static final int FLIGHTS = 20;
+    private static final int CRAWLS = 1000;
+    // A process run (open ... close) every this many crawls
+    private static final int CRAWLS_PER_RUN = 12;
+    private static final long CRAWL_INTERVAL_MILLIS = 2 * 60 * 60 * 1000;
+    private static final long FIRST_CRAWL_MILLIS = 1_700_000_000_000L;
+    // A block record alone takes 8 bytes of framing and 43 of fixed fields
+    private static final double MAX_BYTES_PER_POINT = 10;
+    private static final long SEED = 7;
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("price-history-check");
+        try {
+            checkCompression(directory.resolve("compression"));
+            checkCrash(directory.resolve("crash"));
+            checkDeparted(directory.resolve("departed"));
+        } finally {
+            deleteRecursively(directory);
+        }
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All price history checks passed.");
+    }
+
+    private static void checkCompression(Path directory) throws IOException {
+        String date = LocalDate.now().plusYears(1).toString();
+        Random random = new Random(SEED);
+        long[] prices = new long[FLIGHTS];
+        for (int f = 0; f < FLIGHTS; f++) {
+            prices[f] = 500 + random.nextInt(1000);
+        }
+        List<Long> expected = new ArrayList<>();
+        long bytes = 0;
+        for (int run = 0; run * CRAWLS_PER_RUN < CRAWLS; run++) {
+            try (PriceHistory history = PriceHistory.open(directory)) {
+                for (int c = run * CRAWLS_PER_RUN; c < Math.min(CRAWLS, (run + 1) * CRAWLS_PER_RUN); c++) {
+                    long crawledAt = FIRST_CRAWL_MILLIS + c * CRAWL_INTERVAL_MILLIS;
+                    for (int f = 0; f < FLIGHTS; f++) {
+                        // Fares move now and then, mostly by small steps
+                        if (random.nextInt(8) == 0) {
+                            prices[f] = Math.max(200, prices[f] + random.nextInt(101) - 50);
+                        }
+                        history.record(fare(flightNumber(f), prices[f], date), crawledAt);
+                        if (f == 0) {
+                            expected.add(prices[f] * 100);
+                        }
+                    }
+                }
+                bytes = history.storedBytes();
+            }
+        }
+
+        try (PriceHistory history = PriceHistory.open(directory)) {
+            check("points", history.pointCount(), (long) FLIGHTS * CRAWLS);
+            check("stored bytes after reopen", history.storedBytes(), bytes);
+            double perPoint = (double) bytes / history.pointCount();
+            System.out.printf("%d points in %d bytes, %.2f bytes per point%n", history.pointCount(), bytes,
+                    perPoint);
+            check("at most " + MAX_BYTES_PER_POINT + " bytes per point", perPoint <= MAX_BYTES_PER_POINT, true);
+            check("prices of " + flightNumber(0), prices(history.range("SHA", "BJS", date, flightNumber(0),
+                    Long.MIN_VALUE, Long.MAX_VALUE)), expected);
+            PriceHistory.Points window = history.range("SHA", "BJS", date, flightNumber(0),
+                    FIRST_CRAWL_MILLIS + 100 * CRAWL_INTERVAL_MILLIS, FIRST_CRAWL_MILLIS + 199 * CRAWL_INTERVAL_MILLIS);
+            check("points in window", prices(window), expected.subList(100, 200));
+        }
+    }
+
+    private static void checkCrash(Path directory) throws IOException {
+        String date = LocalDate.now().plusYears(1).toString();
+        // Never closed: stands for a process killed after its last record
+        PriceHistory crashed = PriceHistory.open(directory);
+        for (int c = 0; c < 200; c++) {
+            crashed.record(fare("MU5101", 600 + c % 7, date), FIRST_CRAWL_MILLIS + c * CRAWL_INTERVAL_MILLIS);
+        }
+        crashed.record(fare("HO1251", 0, date), FIRST_CRAWL_MILLIS);
+        check("unpriced flight skipped", crashed.flightNumbers("SHA", "BJS", date), List.of("MU5101"));
+        // Half a record, as left by a crash mid-append
+        Files.write(directory.resolve("open-points.log"), new byte[] { 29, 0, 0, 0, 1, 2 },
+                StandardOpenOption.APPEND);
+
+        try (PriceHistory history = PriceHistory.open(directory)) {
+            check("points after crash", history.pointCount(), 200L);
+            PriceHistory.Points points = history.range("SHA", "BJS", date, "MU5101", Long.MIN_VALUE,
+                    Long.MAX_VALUE);
+            check("last point after crash", points.getPriceFen(points.size() - 1), (600 + 199 % 7) * 100L);
+            history.record(fare("MU5101", 650, date), FIRST_CRAWL_MILLIS + 200 * CRAWL_INTERVAL_MILLIS);
+        }
+        try (PriceHistory history = PriceHistory.open(directory)) {
+            check("points after reopen", history.pointCount(), 201L);
+            check("no duplicate points", history.range("SHA", "BJS", date, "MU5101", Long.MIN_VALUE,
+                    Long.MAX_VALUE).size(), 201);
+        }
+    }
+
+    private static void checkDeparted(Path directory) throws IOException {
+        String date = LocalDate.now().minusDays(1).toString();
+        try (PriceHistory history = PriceHistory.open(directory)) {
+            for (int c = 0; c < 10; c++) {
+                history.record(fare("MU5101", 600, date), FIRST_CRAWL_MILLIS + c * CRAWL_INTERVAL_MILLIS);
+            }
+        }
+        check("point log emptied", Files.size(directory.resolve("open-points.log")), 0L);
+        try (PriceHistory history = PriceHistory.open(directory)) {
+            check("departed flight points", history.range("SHA", "BJS", date, "MU5101", Long.MIN_VALUE,
+                    Long.MAX_VALUE).size(), 10);
+        }
+    }
+
+    private static String flightNumber(int flight) {
+        return "MU" + (5101 + flight);
+    }
+
+    private static FlightData fare(String flightNumber, double price, String date) {
+        return new FlightData(flightNumber, "东方航空", "07:00", "09:15", price, "SHA", "BJS", false, 0, date, 0);
+    }
+
+    private static List<Long> prices(PriceHistory.Points points) {
+        List<Long> prices = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            prices.add(points.getPriceFen(i));
+        }
+        return prices;
+    }
+
+    private static void check(String what, Object actual, Object expected) {
+        if (!expected.equals(actual)) {
+            System.out.println("FAIL " + what + ": expected " + expected + ", got " + actual);
+            failures++;
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}